@@ -0,0 +1,199 @@
+import java.io.FileWriter;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Benchmarks of the IQueensLogic implementations, measuring for each board size
+ *
+ *  - the time of initializeBoard, building the rules from scratch
+ *  - the peak number of live BDD nodes during the build (MyLogic only)
+ *  - the latency of insertQueen over random sequences of valid clicks
+ *  - the cost of getBoard
+ *
+ * Every measurement is preceded by warmup runs that are thrown away. What the
+ * logics print is discarded while they run, so the console is not measured
+ * (PrimitiveLogic prints every click). The results are printed to standard
+ * error and written as JSON.
+ *
+ * Usage: java QueensBenchmark [from] [to] [output] [logic...]
+ *  from, to - range of board sizes, defaults 6 and 14
+ *  output   - JSON file to write, default bench_results.json
+ *  logic    - IQueensLogic implementations, default MyLogic and PrimitiveLogic
+ *
+ * Compile together with the sources:
+ *  javac -cp javabdd-1.0b2.jar -d out src/*.java bench/*.java
+ *  java -cp javabdd-1.0b2.jar:out QueensBenchmark 6 10
+ *
+ * @author Sabina Hult
+ */
+public class QueensBenchmark {
+    private static final int WARMUP = 2;
+    private static final int MEASURE = 5;
+    private static final int SEQUENCES = 20;
+    private static final int GET_BOARD_CALLS = 1000000;
+
+    // keeps the JIT from removing the work being measured
+    private static long blackhole;
+
+    public static void main(String[] args) throws Exception {
+        int from = args.length >= 1 ? Integer.parseInt(args[0]) : 6;
+        int to = args.length >= 2 ? Integer.parseInt(args[1]) : 14;
+        String output = args.length >= 3 ? args[2] : "bench_results.json";
+        List<String> logics = new ArrayList<>();
+        for(int i = 3; i < args.length; i++) logics.add(args[i]);
+        if(logics.isEmpty()) logics.addAll(Arrays.asList("MyLogic", "PrimitiveLogic"));
+
+        List<Result> results = new ArrayList<>();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for(String logic : logics) {
+                for(int n = from; n <= to; n++) {
+                    Result result = run(logic, n);
+                    System.err.println(result.toJson());
+                    results.add(result);
+                }
+            }
+        } finally {
+            System.setOut(stdout);
+        }
+
+        try(PrintWriter out = new PrintWriter(new FileWriter(output))) {
+            out.println("[");
+            for(int i = 0; i < results.size(); i++) {
+                out.println("  " + results.get(i).toJson() + (i + 1 < results.size() ? "," : ""));
+            }
+            out.println("]");
+        }
+        System.err.println("Results written to " + output + " (" + blackhole + ")");
+    }
+
+    private static Result run(String logicName, int n) throws Exception {
+        Result result = new Result(logicName, n);
+
+        // initializeBoard, always building the rules
+        long[] init = new long[MEASURE];
+        for(int i = -WARMUP; i < MEASURE; i++) {
+            IQueensLogic logic = create(logicName, false);
+            long start = System.nanoTime();
+            logic.initializeBoard(n);
+            long time = System.nanoTime() - start;
+            if(i < 0) continue;
+
+            init[i] = time;
+            if(logic instanceof MyLogic) {
+                result.peakNodes = Math.max(result.peakNodes, ((MyLogic) logic).getBuildStats().getPeakNodes());
+            }
+        }
+        result.initMillis = new Summary(init, 1e6);
+
+        // insertQueen over random click sequences, starting from a cached build
+        Random random = new Random(n);
+        List<Long> clicks = new ArrayList<>();
+        for(int i = -WARMUP; i < SEQUENCES; i++) {
+            IQueensLogic logic = create(logicName, true);
+            logic.initializeBoard(n);
+            List<Long> sequence = clickSequence(logic, n, random);
+            if(i >= 0) clicks.addAll(sequence);
+        }
+        long[] latencies = new long[clicks.size()];
+        for(int i = 0; i < latencies.length; i++) latencies[i] = clicks.get(i);
+        result.insertMicros = new Summary(latencies, 1e3);
+
+        // getBoard on a fresh board
+        IQueensLogic logic = create(logicName, true);
+        logic.initializeBoard(n);
+        long[] getBoard = new long[MEASURE];
+        for(int i = -WARMUP; i < MEASURE; i++) {
+            long start = System.nanoTime();
+            for(int j = 0; j < GET_BOARD_CALLS; j++) {
+                blackhole += logic.getBoard().length;
+            }
+            if(i >= 0) getBoard[i] = System.nanoTime() - start;
+        }
+        // time per call
+        result.getBoardNanos = new Summary(getBoard, GET_BOARD_CALLS);
+        return result;
+    }
+
+    /**
+     * Clicks on random empty positions until the board is full and returns
+     * the latency of each click in nanoseconds
+     */
+    private static List<Long> clickSequence(IQueensLogic logic, int n, Random random) {
+        List<Long> latencies = new ArrayList<>();
+        while(true) {
+            int[][] board = logic.getBoard();
+            List<int[]> empty = new ArrayList<>();
+            for(int c = 0; c < n; c++) {
+                for(int r = 0; r < n; r++) {
+                    if(board[c][r] == 0) empty.add(new int[] {c, r});
+                }
+            }
+            if(empty.isEmpty()) return latencies;
+
+            int[] click = empty.get(random.nextInt(empty.size()));
+            long start = System.nanoTime();
+            logic.insertQueen(click[0], click[1]);
+            latencies.add(System.nanoTime() - start);
+            blackhole += logic.getBoard()[click[0]][click[1]];
+        }
+    }
+
+    private static IQueensLogic create(String logicName, boolean cached) throws Exception {
+        IQueensLogic logic = Queens.parseLogicParam(logicName);
+        if(logic instanceof MyLogic && !cached) ((MyLogic) logic).setCache(null);
+        return logic;
+    }
+
+    /**
+     * Mean, minimum and percentiles of a series of measurements
+     */
+    private static class Summary {
+        final double mean, min, p50, p99, max;
+
+        Summary(long[] values, double unit) {
+            long[] sorted = values.clone();
+            Arrays.sort(sorted);
+            double sum = 0;
+            for(long v : sorted) sum += v;
+            mean = sum / sorted.length / unit;
+            min = sorted[0] / unit;
+            p50 = sorted[(sorted.length - 1) / 2] / unit;
+            p99 = sorted[(int) Math.ceil(0.99 * sorted.length) - 1] / unit;
+            max = sorted[sorted.length - 1] / unit;
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                    "{\"mean\": %.3f, \"min\": %.3f, \"p50\": %.3f, \"p99\": %.3f, \"max\": %.3f}",
+                    mean, min, p50, p99, max);
+        }
+    }
+
+    private static class Result {
+        final String logic;
+        final int n;
+        Summary initMillis, insertMicros, getBoardNanos;
+        int peakNodes;
+
+        Result(String logic, int n) {
+            this.logic = logic;
+            this.n = n;
+        }
+
+        String toJson() {
+            return "{\"logic\": \"" + logic + "\", \"n\": " + n
+                    + ", \"initializeBoardMs\": " + initMillis.toJson()
+                    + ", \"peakNodes\": " + (peakNodes > 0 ? peakNodes : "null")
+                    + ", \"insertQueenUs\": " + insertMicros.toJson()
+                    + ", \"getBoardNs\": " + getBoardNanos.toJson() + "}";
+        }
+    }
+}
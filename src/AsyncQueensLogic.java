@@ -0,0 +1,508 @@
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A board in play on top of a CompiledBoard whose moves do not block the
+ * caller. Every move returns a future of the board after it, and the moves
+ * are made one at a time, in the order they were asked for, on a worker
+ * thread of the board.
+ *
+ * A move can be cancelled until it is made: cancelling its future either
+ * drops it from the queue, or, if the worker is already restricting the
+ * rules for it, throws away the result, so the move never happened.
+ * cancelPending cancels every move not made yet, for when the user clicks
+ * again and only the latest click matters.
+ *
+ * While no move is waiting the worker speculates: it places a queen on each
+ * free cell of the board in turn and keeps the state it gives, so the next
+ * click is a cache hit. A move that arrives waits for at most the one cell
+ * being speculated on. States are kept within a Budget of states, BDD nodes
+ * and free heap. When it is full, speculation evicts the least recently used
+ * states it made for earlier boards, and stops once none are left; visited
+ * states, which undo goes back to, are only evicted to keep another visited
+ * state.
+ *
+ * @author Sabina Hult
+ */
+public class AsyncQueensLogic implements AutoCloseable {
+    private final CompiledBoard compiled;
+    private final int size;
+    private final Budget budget;
+    // a pool of one thread, so a cancelled move can be taken out of its queue
+    private final ThreadPoolExecutor worker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+        Thread thread = new Thread(r, "queens-async");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // moves asked for but not made or cancelled yet, and their futures
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Set<MoveFuture> queued = ConcurrentHashMap.newKeySet();
+    // whether the worker has a speculation step queued
+    private final AtomicBoolean speculating = new AtomicBoolean();
+    private volatile int[][] board;
+    // moves whose state was kept, and moves that restricted the rules
+    private volatile long hits, misses;
+
+    // everything below is only used by the worker thread
+    private BoardState current;
+    private final Deque<BitSet> undoStack = new ArrayDeque<>();
+    private final Deque<BitSet> redoStack = new ArrayDeque<>();
+    // visited and speculated states, in access order, each owning its BDD
+    private final LinkedHashMap<BitSet, Entry> states = new LinkedHashMap<>(16, 0.75f, true);
+    private long nodes;
+    // moves made so far, to tell the states of the current board from older ones
+    private int generation;
+    // the next cell to speculate on, size*size when every cell has been tried
+    private int nextCell;
+    private boolean closed;
+
+    public AsyncQueensLogic(CompiledBoard compiled, Budget budget) {
+        this.compiled = compiled;
+        this.size = compiled.getSize();
+        this.budget = budget;
+        BitSet empty = new BitSet();
+        int rules = compiled.copyRules();
+        current = new BoardState(empty, rules, compiled.boardOf(empty, rules));
+        board = current.copyBoard();
+        idle();
+    }
+
+    /**
+     * Returns an empty board on the rules, speculating within the budget
+     * given by the system property queens.speculation
+     */
+    public static AsyncQueensLogic fromProperty(CompiledBoard compiled) {
+        return new AsyncQueensLogic(compiled, Budget.fromProperty());
+    }
+
+    /**
+     * Returns the board after the last move made. It must not be changed
+     */
+    public int[][] getBoard() {
+        return board;
+    }
+
+    /**
+     * Places a queen if the position is empty when the move is made
+     */
+    public CompletableFuture<int[][]> insertQueen(int column, int row) {
+        return submit(() -> {
+            if(board[column][row] != 0) return null;
+            BitSet queens = current.getPlaced();
+            queens.set(BoardState.cell(column, row, size));
+            return queens;
+        });
+    }
+
+    /**
+     * Removes a queen if it was placed by insertQueen when the move is made
+     */
+    public CompletableFuture<int[][]> removeQueen(int column, int row) {
+        return submit(() -> {
+            BitSet queens = current.getPlaced();
+            int cell = BoardState.cell(column, row, size);
+            if(!queens.get(cell)) return null;
+            queens.clear(cell);
+            return queens;
+        });
+    }
+
+    /**
+     * Takes back the latest move that has not been undone, if there is one
+     */
+    public CompletableFuture<int[][]> undo() {
+        return submit(() -> undoStack.isEmpty() ? null : undoStack.peek(), true);
+    }
+
+    /**
+     * Makes the latest undone move again, if there is one
+     */
+    public CompletableFuture<int[][]> redo() {
+        return submit(() -> redoStack.isEmpty() ? null : redoStack.peek(), false);
+    }
+
+    /**
+     * Cancels every move that has not been made yet
+     */
+    public void cancelPending() {
+        for(MoveFuture move : queued) move.cancel(false);
+    }
+
+    /**
+     * Returns the number of moves made from a kept state
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of moves that had to restrict the rules
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of states kept, visited or speculated
+     */
+    public int getStateCount() {
+        return call(states::size);
+    }
+
+    /**
+     * Stops the worker and releases every BDD of the board. Moves not made
+     * yet are cancelled
+     */
+    @Override
+    public void close() {
+        cancelPending();
+        try {
+            worker.submit(() -> {
+                closed = true;
+                for(Entry entry : states.values()) compiled.free(entry.state.getBDD());
+                states.clear();
+                compiled.free(current.getBDD());
+            }).get();
+        } catch(Exception e) {
+            // the worker is stopped below either way
+        }
+        worker.shutdown();
+    }
+
+    /**
+     * The queens after a move, or null if the move changes nothing
+     */
+    private interface Move {
+        BitSet target();
+    }
+
+    private CompletableFuture<int[][]> submit(Move move) {
+        return submit(move, null);
+    }
+
+    /**
+     * Queues the move. undo is true for an undo, false for a redo and null
+     * for any other move
+     */
+    private CompletableFuture<int[][]> submit(Move move, Boolean undo) {
+        MoveFuture future = new MoveFuture();
+        long start = QueensMetrics.start();
+        queued.add(future);
+        pending.incrementAndGet();
+        future.task = () -> {
+            try {
+                if(!future.isCancelled()) make(move, undo, future);
+            } catch(RuntimeException e) {
+                future.completeExceptionally(e);
+            } finally {
+                queued.remove(future);
+                pending.decrementAndGet();
+                QueensMetrics.time("play.async", start);
+                idle();
+            }
+        };
+        try {
+            worker.execute(future.task);
+        } catch(RejectedExecutionException e) {
+            queued.remove(future);
+            pending.decrementAndGet();
+            future.completeExceptionally(new IllegalStateException("The board is closed"));
+        }
+        return future;
+    }
+
+    private void make(Move move, Boolean undo, MoveFuture future) {
+        BitSet target = move.target();
+        if(target == null) {
+            future.complete(board);
+            return;
+        }
+
+        BoardState next = stateOf(target);
+        // a move cancelled while it was made never happens, its state is kept for later
+        if(!future.claim()) {
+            keep(next, false);
+            return;
+        }
+
+        BitSet from = current.getPlaced();
+        if(undo == null) {
+            undoStack.push(from);
+            redoStack.clear();
+        } else if(undo) {
+            undoStack.pop();
+            redoStack.push(from);
+        } else {
+            redoStack.pop();
+            undoStack.push(from);
+        }
+        keep(current, false);
+        current = next;
+        board = next.copyBoard();
+        generation++;
+        nextCell = 0;
+        future.complete(board);
+    }
+
+    /**
+     * Returns a new state of the queens, with its own BDD, from the kept
+     * states if possible and else by restricting the rules
+     */
+    private BoardState stateOf(BitSet queens) {
+        Entry entry = states.get(queens);
+        QueensMetrics.count(entry == null ? "speculation.miss" : "speculation.hit");
+        if(entry == null) misses++;
+        else hits++;
+        if(entry != null) {
+            return new BoardState(queens, compiled.copy(entry.state.getBDD()), entry.state.copyBoard());
+        }
+        return restricted(queens);
+    }
+
+    /**
+     * Returns the state of the queens, restricting the current state by one
+     * queen when the queens are one more than it has
+     */
+    private BoardState restricted(BitSet queens) {
+        BitSet added = (BitSet) queens.clone();
+        added.andNot(current.getPlaced());
+        BitSet removed = current.getPlaced();
+        removed.andNot(queens);
+
+        int bdd;
+        if(added.cardinality() == 1 && removed.isEmpty()) {
+            int cell = added.nextSetBit(0);
+            bdd = compiled.place(current.getBDD(), cell / size, cell % size);
+        } else {
+            bdd = compiled.placeAll(queens);
+        }
+        return new BoardState(queens, bdd, compiled.boardOf(queens, bdd));
+    }
+
+    /**
+     * Keeps the state, which from now on is owned by the kept states.
+     * Returns false, and frees the state, if there is no room for it
+     */
+    private boolean keep(BoardState state, boolean speculative) {
+        Entry old = states.remove(state.getPlaced());
+        if(old != null) {
+            compiled.free(old.state.getBDD());
+            nodes -= old.nodes;
+        }
+
+        Entry entry = new Entry(state, compiled.nodeCount(state.getBDD()), generation, speculative);
+        if(!makeRoom(entry.nodes, speculative)) {
+            compiled.free(state.getBDD());
+            return false;
+        }
+        states.put(state.getPlaced(), entry);
+        nodes += entry.nodes;
+        return true;
+    }
+
+    /**
+     * Evicts the least recently used states until a state of the given
+     * nodes fits the budget. Speculation only evicts the states it made for
+     * earlier boards, so the states of visited boards stay for undo, and
+     * returns false if that does not make enough room
+     */
+    private boolean makeRoom(long more, boolean speculative) {
+        Iterator<Entry> eldest = states.values().iterator();
+        while(!budget.fits(states.size() + 1, nodes + more)) {
+            if(!eldest.hasNext()) return false;
+            Entry entry = eldest.next();
+            if(speculative && (!entry.speculative || entry.generation == generation)) continue;
+            eldest.remove();
+            compiled.free(entry.state.getBDD());
+            nodes -= entry.nodes;
+            QueensMetrics.count("speculation.evicted");
+        }
+        return true;
+    }
+
+    /**
+     * Speculates on the next free cell, unless a move is waiting, and queues
+     * itself again for the cell after it
+     */
+    private void idle() {
+        if(pending.get() > 0 || closed || !budget.isEnabled()) return;
+        if(!speculating.compareAndSet(false, true)) return;
+        try {
+            worker.execute(this::speculate);
+        } catch(RejectedExecutionException e) {
+            // the board is closed
+        }
+    }
+
+    private void speculate() {
+        speculating.set(false);
+        if(pending.get() > 0 || closed) return;
+        int[][] shown = current.copyBoard();
+        for(; nextCell < size * size; nextCell++) {
+            if(shown[nextCell / size][nextCell % size] != 0) continue;
+            BitSet queens = current.getPlaced();
+            queens.set(nextCell);
+            Entry kept = states.get(queens);
+            if(kept != null) {
+                // speculated for the current board as well, so not evicted for it
+                kept.generation = generation;
+                continue;
+            }
+            if(!makeRoom(0, true)) return;
+
+            nextCell++;
+            if(keep(restricted(queens), true)) {
+                QueensMetrics.count("speculation.states");
+                idle();
+            }
+            return;
+        }
+    }
+
+    /**
+     * Runs the call on the worker and waits for its result
+     */
+    private <T> T call(Callable<T> call) {
+        try {
+            return worker.submit(call).get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch(ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * The future of a move, which can no longer be cancelled once the move
+     * is being made current. Cancelling a move the worker has not started
+     * takes it out of the queue
+     */
+    private class MoveFuture extends CompletableFuture<int[][]> {
+        private boolean claimed;
+        // the task making the move, set before it is queued
+        private volatile Runnable task;
+
+        /**
+         * Returns false if the move was cancelled, and else makes sure it
+         * will not be
+         */
+        synchronized boolean claim() {
+            if(isCancelled()) return false;
+            claimed = true;
+            return true;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized(this) {
+                if(claimed || !super.cancel(mayInterruptIfRunning)) return false;
+            }
+            // only one of this and the task itself gets to count the move as no longer pending
+            Runnable queuedTask = task;
+            if(queuedTask != null && worker.remove(queuedTask)) {
+                queued.remove(this);
+                pending.decrementAndGet();
+                idle();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A kept state, the nodes of its BDD, and the last board it was
+     * speculated for, if it was never visited
+     */
+    private static class Entry {
+        final BoardState state;
+        final int nodes;
+        int generation;
+        final boolean speculative;
+
+        Entry(BoardState state, int nodes, int generation, boolean speculative) {
+            this.state = state;
+            this.nodes = nodes;
+            this.generation = generation;
+            this.speculative = speculative;
+        }
+    }
+
+    /**
+     * The most states, and BDD nodes in them, kept by a board, and the part
+     * of the heap that has to stay free for speculation to go on
+     */
+    public static class Budget {
+        // property for the budget: off, or states[,nodes]
+        public static final String PROPERTY = "queens.speculation";
+        public static final int DEFAULT_STATES = 256;
+        public static final long DEFAULT_NODES = 1 << 22;
+        // speculation stops when less than this part of the heap is free
+        private static final double FREE_HEAP = 0.125;
+
+        private final int maxStates;
+        private final long maxNodes;
+
+        public Budget(int maxStates, long maxNodes) {
+            this.maxStates = maxStates;
+            this.maxNodes = maxNodes;
+        }
+
+        /**
+         * Returns the budget given by the system property queens.speculation,
+         * off or the number of states optionally followed by the number of
+         * nodes, e.g. 256,4000000. Without it the budget is 256 states and
+         * 4194304 nodes
+         */
+        public static Budget fromProperty() {
+            String value = System.getProperty(PROPERTY, "").trim();
+            if(value.isEmpty()) return new Budget(DEFAULT_STATES, DEFAULT_NODES);
+            if(value.equals("off")) return new Budget(0, 0);
+            String[] parts = value.split(",");
+            try {
+                int states = Integer.parseInt(parts[0].trim());
+                long nodes = parts.length > 1 ? Long.parseLong(parts[1].trim()) : DEFAULT_NODES;
+                if(parts.length > 2 || states < 0 || nodes < 0) throw new NumberFormatException(value);
+                return new Budget(states, nodes);
+            } catch(NumberFormatException e) {
+                throw new IllegalArgumentException("Unknown value of " + PROPERTY + ": " + value
+                        + " (off, or states[,nodes])");
+            }
+        }
+
+        public boolean isEnabled() {
+            return maxStates > 0;
+        }
+
+        /**
+         * Returns true if the states and nodes are within the budget and
+         * enough of the heap is free
+         */
+        boolean fits(int states, long nodes) {
+            if(states > maxStates || nodes > maxNodes) return false;
+            Runtime runtime = Runtime.getRuntime();
+            long free = runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory();
+            return free >= runtime.maxMemory() * FREE_HEAP;
+        }
+
+        @Override
+        public String toString() {
+            return isEnabled() ? maxStates + " states, " + maxNodes + " nodes" : "off";
+        }
+    }
+}
@@ -0,0 +1,179 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A cache of compiled BDDs on disk, so the rules only have to be built the
+ * first time a board is used.
+ *
+ * Each entry is a file holding a NodeGraph in a compact binary format:
+ *
+ *  int    magic number
+ *  int    format version
+ *  UTF    key the entry was stored under
+ *  int    number of variables
+ *  int    number of nodes, including the two terminals
+ *  int    index of the root
+ *  int[3] variable, low child and high child of each non-terminal node
+ *  long   CRC32 of all of the above
+ *
+ * Entries are read through a memory mapped buffer. An entry that was stored
+ * under another key, by another format version, or that fails its checksum
+ * is ignored, so the caller falls back to building the BDD again.
+ *
+ * The directory is given by the system property queens.bddcache (default
+ * bddcache in the working directory); the value none turns the cache off.
+ *
+ * @author Sabina Hult
+ */
+public class BDDCache {
+    public static final String PROPERTY = "queens.bddcache";
+
+    private static final int MAGIC = 0x4e514244; // "NQBD"
+    private static final int VERSION = 1;
+    private static final int NODE_INTS = 3;
+
+    private final File directory;
+
+    public BDDCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the cache in the directory named by the system property,
+     * or null if the cache is turned off
+     */
+    public static BDDCache fromProperty() {
+        String dir = System.getProperty(PROPERTY, "bddcache");
+        if(dir.equals("none")) return null;
+        return new BDDCache(new File(dir));
+    }
+
+    /**
+     * Returns the graph stored under the key, or null if there is no
+     * valid entry for it
+     */
+    public NodeGraph load(String key) {
+        File file = file(key);
+        if(!file.isFile()) return null;
+
+        try(RandomAccessFile in = new RandomAccessFile(file, "r");
+            FileChannel channel = in.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            NodeGraph graph = read(buffer, key);
+            if(graph == null) System.err.println("Ignoring stale or corrupt cache entry " + file);
+            return graph;
+        } catch(IOException | BufferUnderflowException | IllegalArgumentException e) {
+            System.err.println("Ignoring unreadable cache entry " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the graph under the key, replacing any earlier entry. Failing
+     * to write the cache is reported but otherwise ignored
+     */
+    public void save(String key, NodeGraph graph) {
+        File file = file(key);
+        try {
+            Files.createDirectories(directory.toPath());
+            File tmp = File.createTempFile(file.getName(), ".tmp", directory);
+            try {
+                try(OutputStream out = new FileOutputStream(tmp)) {
+                    write(out, key, graph);
+                }
+                // readers never see a half written entry
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                // only left if the entry was not moved in place
+                Files.deleteIfExists(tmp.toPath());
+            }
+        } catch(IOException e) {
+            System.err.println("Could not write cache entry " + file + ": " + e);
+        }
+    }
+
+    /**
+     * Removes the entry stored under the key, if there is one
+     */
+    public void delete(String key) {
+        File file = file(key);
+        if(file.exists() && !file.delete()) System.err.println("Could not delete cache entry " + file);
+    }
+
+    private File file(String key) {
+        return new File(directory, key.replaceAll("[^A-Za-z0-9_.-]", "_") + ".bdd");
+    }
+
+    private static void write(OutputStream stream, String key, NodeGraph graph) throws IOException {
+        CRC32 crc = new CRC32();
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new CheckedOutputStream(stream, crc)));
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(key);
+        out.writeInt(graph.varNum());
+        out.writeInt(graph.size());
+        out.writeInt(graph.root());
+        for(int i = 2; i < graph.size(); i++) {
+            out.writeInt(graph.var(i));
+            out.writeInt(graph.low(i));
+            out.writeInt(graph.high(i));
+        }
+        out.flush();
+
+        // the checksum itself is not part of the checksum
+        new DataOutputStream(stream).writeLong(crc.getValue());
+    }
+
+    private static NodeGraph read(MappedByteBuffer buffer, String key) {
+        if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+
+        byte[] storedKey = new byte[buffer.getShort() & 0xffff];
+        buffer.get(storedKey);
+        if(!key.equals(new String(storedKey, StandardCharsets.UTF_8))) return null;
+
+        int varNum = buffer.getInt();
+        int size = buffer.getInt();
+        int root = buffer.getInt();
+        if(size < 2 || root < 0 || root >= size) return null;
+        if(buffer.remaining() != (long) (size - 2) * NODE_INTS * 4 + 8) return null;
+
+        int[] var = new int[size];
+        int[] low = new int[size];
+        int[] high = new int[size];
+        var[NodeGraph.FALSE] = var[NodeGraph.TRUE] = -1;
+        for(int i = 2; i < size; i++) {
+            var[i] = buffer.getInt();
+            low[i] = buffer.getInt();
+            high[i] = buffer.getInt();
+            // children always come before their parents
+            if(var[i] < 0 || var[i] >= varNum || low[i] >= i || high[i] >= i || low[i] < 0 || high[i] < 0) {
+                return null;
+            }
+        }
+
+        int end = buffer.position();
+        long storedCRC = buffer.getLong();
+        CRC32 crc = new CRC32();
+        buffer.rewind().limit(end);
+        crc.update(buffer);
+        if(crc.getValue() != storedCRC) return null;
+
+        return new NodeGraph(varNum, var, low, high, root);
+    }
+}
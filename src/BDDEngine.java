@@ -0,0 +1,169 @@
+import java.math.BigInteger;
+
+/**
+ * The operations the configurator needs from a BDD package, on BDDs given
+ * as int handles.
+ *
+ * Every handle returned is a new reference that the caller owns and has to
+ * release with free, like a JavaBDD BDD object. Handles passed to an
+ * operation are left untouched, except by the ...With operations, which
+ * consume both operands. Implementations are not thread safe.
+ *
+ * @author Sabina Hult
+ */
+public interface BDDEngine {
+
+    /**
+     * Returns the name of the engine, shown in the build output
+     */
+    String getName();
+
+    int varNum();
+
+    int zero();
+
+    int one();
+
+    /**
+     * Returns the BDD of the variable being true
+     */
+    int ithVar(int var);
+
+    /**
+     * Returns the BDD of the variable being false
+     */
+    int nithVar(int var);
+
+    int and(int f, int g);
+
+    int or(int f, int g);
+
+    int not(int f);
+
+    /**
+     * Returns the BDD of if f then g else h
+     */
+    int ite(int f, int g, int h);
+
+    /**
+     * Returns f with the variables of the cube fixed to the values they
+     * have in it. The cube must be a conjunction of literals
+     */
+    int restrict(int f, int cube);
+
+    /**
+     * Returns a new reference to f
+     */
+    int copy(int f);
+
+    /**
+     * Releases a reference to f
+     */
+    void free(int f);
+
+    boolean isZero(int f);
+
+    boolean isOne(int f);
+
+    /**
+     * Returns the number of satisfying assignments over all the variables
+     */
+    double satCount(int f);
+
+    /**
+     * Returns the number of nodes of f, not counting the terminals
+     */
+    int nodeCount(int f);
+
+    /**
+     * Returns an array indexed by variable holding DomainPropagator.TRUE if
+     * the variable is true in every satisfying assignment of f, FALSE if it
+     * is false in every one (or if f is unsatisfiable), and FREE otherwise
+     */
+    int[] varDomains(int f);
+
+    /**
+     * Returns the nodes of f in flat arrays, independent of the engine
+     */
+    NodeGraph snapshot(int f);
+
+    /**
+     * Returns the variable at the given level of the current variable order
+     */
+    int level2Var(int level);
+
+    /**
+     * Returns the number of nodes in use, including garbage not yet collected
+     */
+    int getNodeNum();
+
+    /**
+     * Returns the current capacity of the node table
+     */
+    int getNodeTableSize();
+
+    /**
+     * Reports garbage collections, node table growth and reorderings to the
+     * monitor from now on, or to nobody if it is null
+     */
+    default void setMonitor(EngineMonitor monitor) {
+    }
+
+    /**
+     * Returns the number of operations answered from the computed cache and
+     * the number computed, or null if the engine does not count them
+     */
+    default long[] getCacheHitsAndMisses() {
+        return null;
+    }
+
+    /**
+     * Limits the node table to the given number of nodes, 0 for no limit.
+     * An operation needing more throws a NodeLimitException instead of
+     * running out of memory. Only NativeBDD honours the limit, the other
+     * engines ignore it
+     */
+    default void setNodeLimit(int maxNodes) {
+    }
+
+    /**
+     * Returns the exact number of satisfying assignments over all the variables
+     */
+    default BigInteger exactSatCount(int f) {
+        int[] level2Var = new int[varNum()];
+        for(int l = 0; l < level2Var.length; l++) level2Var[l] = level2Var(l);
+        return new SolutionCounter(snapshot(f), level2Var, null).count();
+    }
+
+    /**
+     * Returns the BDD of if var then high else low, leaving low and high
+     * untouched. When var comes before every variable of low and high in
+     * the order, engines can build the node directly without an apply
+     */
+    default int node(int var, int low, int high) {
+        int v = ithVar(var);
+        int result = ite(v, high, low);
+        free(v);
+        return result;
+    }
+
+    /**
+     * Returns f and g, consuming both
+     */
+    default int andWith(int f, int g) {
+        int result = and(f, g);
+        free(f);
+        free(g);
+        return result;
+    }
+
+    /**
+     * Returns f or g, consuming both
+     */
+    default int orWith(int f, int g) {
+        int result = or(f, g);
+        free(f);
+        free(g);
+        return result;
+    }
+}
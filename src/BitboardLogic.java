@@ -0,0 +1,292 @@
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The n-queens configurator for boards of up to 8 x 8 without any BDD. The
+ * whole board fits in a long, bit column*size+row, so the queens and the
+ * cells they attack are masks, and whether the queens placed so far can
+ * still be completed is answered by a backtracking solver over bitsets.
+ *
+ * The solver places one queen per column from left to right, keeping the
+ * rows and the two diagonals already taken as bits of the next column. For
+ * every state it finds how many completions there are, which cells some
+ * completion uses and which cells all of them use, which gives the board
+ * in one call. States are memoized, keyed by the taken rows and diagonals
+ * and the queens the user placed in the columns still to go, so a state is
+ * solved once however it is reached, in this game or an earlier one.
+ *
+ * @author Sabina Hult
+ */
+public class BitboardLogic implements IUndoableQueensLogic, IHintQueensLogic {
+    public static final int MAX_SIZE = 8;
+
+    // the memo is cleared when it grows past this many states
+    private static final int MAX_MEMO = 1 << 20;
+
+    private int size;
+    // possible values: 0 (empty), 1 (queen), -1 (no queen allowed)
+    private int[][] board;
+
+    // the queens placed by the user, bit column*size+row
+    private long placed;
+    private Deque<Long> undoStack;
+    private Deque<Long> redoStack;
+
+    // per cell, the cells a queen there attacks, itself included
+    private long[] attacks;
+    // the solved states, see key: {completions, cells some use, cells all use}
+    private final Map<Long, long[]> memo = new HashMap<>();
+
+    @Override
+    public void initializeBoard(int size) {
+        if(size < 1 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Bitboards hold boards of 1 to " + MAX_SIZE + " columns, not " + size);
+        }
+        if(size != this.size) memo.clear();
+        this.size = size;
+        attacks = attackMasks(size);
+
+        placed = 0;
+        undoStack = new ArrayDeque<>();
+        redoStack = new ArrayDeque<>();
+        updateBoard();
+    }
+
+    @Override
+    public int[][] getBoard() {
+        return board;
+    }
+
+    @Override
+    public void insertQueen(int column, int row) {
+        // only insert if the position is empty
+        if(board[column][row] != 0) return;
+        record();
+        placed |= bit(column, row);
+        updateBoard();
+    }
+
+    @Override
+    public void removeQueen(int column, int row) {
+        // only remove queens placed by the user
+        if((placed & bit(column, row)) == 0) return;
+        record();
+        placed &= ~bit(column, row);
+        updateBoard();
+    }
+
+    @Override
+    public boolean undo() {
+        if(undoStack.isEmpty()) return false;
+        redoStack.push(placed);
+        placed = undoStack.pop();
+        updateBoard();
+        return true;
+    }
+
+    @Override
+    public boolean redo() {
+        if(redoStack.isEmpty()) return false;
+        undoStack.push(placed);
+        placed = redoStack.pop();
+        updateBoard();
+        return true;
+    }
+
+    @Override
+    public BigInteger getSolutionCount() {
+        return BigInteger.valueOf(solve(placed)[0]);
+    }
+
+    @Override
+    public BigInteger[][] getSolutionCounts() {
+        long some = solve(placed)[1];
+        BigInteger[][] counts = new BigInteger[size][size];
+        for(int c = 0; c < size; c++) {
+            for(int r = 0; r < size; r++) {
+                long cell = bit(c, r);
+                long count;
+                if((some & cell) == 0) count = 0;
+                else if((placed & cell) != 0) count = solve(placed)[0];
+                else count = solve(placed | cell)[0];
+                counts[c][r] = BigInteger.valueOf(count);
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public int[][] getRandomSolution(Random random) {
+        long queens = placed;
+        if(solve(queens)[0] == 0) return null;
+
+        // choose the queen of every column in proportion to the completions it leaves
+        for(int c = 0; c < size; c++) {
+            if((queens & column(c)) != 0) continue;
+            long total = solve(queens)[0];
+            long pick = (long) (random.nextDouble() * total);
+            for(int r = 0; r < size; r++) {
+                long count = (attacked(queens) & bit(c, r)) != 0 ? 0 : solve(queens | bit(c, r))[0];
+                if(pick < count) {
+                    queens |= bit(c, r);
+                    break;
+                }
+                pick -= count;
+            }
+        }
+
+        int[][] solution = new int[size][size];
+        for(int c = 0; c < size; c++) {
+            for(int r = 0; r < size; r++) solution[c][r] = (queens & bit(c, r)) != 0 ? 1 : -1;
+        }
+        return solution;
+    }
+
+    /**
+     * Returns the number of states in the memo, for benchmarks
+     */
+    public int getMemoSize() {
+        return memo.size();
+    }
+
+    /**
+     * Saves the current queens before a move, which can no longer be redone
+     */
+    private void record() {
+        undoStack.push(placed);
+        redoStack.clear();
+    }
+
+    /**
+     * Sets every cell no completion uses to -1, every cell all completions
+     * use to 1, and the other cells to 0
+     */
+    private void updateBoard() {
+        long[] solved = solve(placed);
+        board = new int[size][size];
+        for(int c = 0; c < size; c++) {
+            for(int r = 0; r < size; r++) {
+                long cell = bit(c, r);
+                // like MyLogic, a board with no solution left rules out every cell
+                if(solved[0] == 0) board[c][r] = -1;
+                else if((solved[2] & cell) != 0) board[c][r] = 1;
+                else board[c][r] = (solved[1] & cell) != 0 ? 0 : -1;
+            }
+        }
+    }
+
+    /**
+     * Returns {completions, cells some completion uses, cells all of them
+     * use} of the queens. Queens attacking each other have no completion
+     */
+    private long[] solve(long queens) {
+        for(long q = queens; q != 0; q &= q - 1) {
+            int cell = Long.numberOfTrailingZeros(q);
+            if((attacks[cell] & queens) != (1L << cell)) return new long[3];
+        }
+        int[] placedRows = new int[size];
+        for(int c = 0; c < size; c++) {
+            long inColumn = queens & column(c);
+            placedRows[c] = inColumn == 0 ? -1 : Long.numberOfTrailingZeros(inColumn) - c * size;
+        }
+        return solve(0, 0, 0, 0, placedRows);
+    }
+
+    /**
+     * Solves the columns from c on, with the rows taken, and the rows of
+     * column c taken by a diagonal going down (down) or up (up) from the
+     * columns before it
+     */
+    private long[] solve(int c, int rows, int down, int up, int[] placedRows) {
+        if(c == size) return new long[] {1, 0, 0};
+
+        long key = key(c, rows, down, up, placedRows);
+        long[] solved = memo.get(key);
+        if(solved != null) return solved;
+
+        int full = (1 << size) - 1;
+        int free = ~(rows | down | up) & full;
+        if(placedRows[c] >= 0) free &= 1 << placedRows[c];
+        // a queen placed later must not be attacked from this column
+        for(int later = c + 1; later < size; later++) {
+            int r = placedRows[later];
+            if(r < 0) continue;
+            int distance = later - c;
+            free &= ~(1 << r);
+            if(r - distance >= 0) free &= ~(1 << (r - distance));
+            if(r + distance < size) free &= ~(1 << (r + distance));
+        }
+
+        long count = 0, some = 0, all = -1L;
+        for(int f = free; f != 0; f &= f - 1) {
+            int row = Integer.numberOfTrailingZeros(f);
+            int taken = 1 << row;
+            long[] rest = solve(c + 1, rows | taken, ((down | taken) << 1) & full, (up | taken) >>> 1, placedRows);
+            if(rest[0] == 0) continue;
+            long cell = bit(c, row);
+            count += rest[0];
+            some |= rest[1] | cell;
+            all &= rest[2] | cell;
+        }
+        solved = count == 0 ? new long[3] : new long[] {count, some, all};
+
+        if(memo.size() >= MAX_MEMO) memo.clear();
+        memo.put(key, solved);
+        return solved;
+    }
+
+    /**
+     * Packs a state into a long: the column, the taken rows and diagonals in
+     * 8 bits each, and the row plus one of the placed queen of this and every
+     * later column in 4 bits each
+     */
+    private static long key(int c, int rows, int down, int up, int[] placedRows) {
+        long key = c | (long) rows << 3 | (long) down << 11 | (long) up << 19;
+        for(int later = c; later < placedRows.length; later++) {
+            key |= (long) (placedRows[later] + 1) << (27 + 4 * (later - c));
+        }
+        return key;
+    }
+
+    /**
+     * Returns the cells attacked by the queens, their own cells included
+     */
+    private long attacked(long queens) {
+        long attacked = 0;
+        for(long q = queens; q != 0; q &= q - 1) attacked |= attacks[Long.numberOfTrailingZeros(q)];
+        return attacked;
+    }
+
+    private long bit(int column, int row) {
+        return 1L << BoardState.cell(column, row, size);
+    }
+
+    private long column(int c) {
+        return ((1L << size) - 1) << (c * size);
+    }
+
+    /**
+     * Returns, per cell, the row, column and diagonals through it
+     */
+    private static long[] attackMasks(int size) {
+        long[] masks = new long[size * size];
+        for(int c = 0; c < size; c++) {
+            for(int r = 0; r < size; r++) {
+                long mask = 0;
+                for(int c2 = 0; c2 < size; c2++) {
+                    for(int r2 = 0; r2 < size; r2++) {
+                        if(c2 == c || r2 == r || c2 - r2 == c - r || c2 + r2 == c + r) {
+                            mask |= 1L << BoardState.cell(c2, r2, size);
+                        }
+                    }
+                }
+                masks[BoardState.cell(c, r, size)] = mask;
+            }
+        }
+        return masks;
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Plays the same random games on a BitboardLogic and a MyLogic, with
+ * queens inserted and removed and moves undone and redone, and checks that
+ * after every move both show the same board and count the same solutions.
+ * Then it times the moves of both and prints the time per move.
+ *
+ * Usage: java BitboardReport [from] [to] [games]  (board sizes, defaults 4
+ * and 8, and the number of games per size, default 200)
+ *
+ * @author Sabina Hult
+ */
+public class BitboardReport {
+
+    public static void main(String[] args) {
+        int from = args.length >= 1 ? Integer.parseInt(args[0]) : 4;
+        int to = args.length >= 2 ? Integer.parseInt(args[1]) : BitboardLogic.MAX_SIZE;
+        int games = args.length >= 3 ? Integer.parseInt(args[2]) : 200;
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%4s %8s %8s %8s %14s %14s %10s%n",
+                "n", "games", "moves", "same", "BDD us/move", "bits us/move", "speedup"));
+
+        boolean allSame = true;
+        for(int n = from; n <= to; n++) {
+            MyLogic bdd = new MyLogic();
+            BitboardLogic bits = new BitboardLogic();
+
+            // the same games on both, compared after every move
+            Random random = new Random(n);
+            int moves = 0;
+            boolean same = true;
+            for(int game = 0; game < games && same; game++) {
+                bdd.initializeBoard(n);
+                bits.initializeBoard(n);
+                same = same(bdd, bits);
+                for(int step = 0; step < 2 * n && same; step++) {
+                    int[] move = RandomMoves.next(bits.getBoard(), random);
+                    if(move == null) break;
+                    RandomMoves.play(bdd, move);
+                    RandomMoves.play(bits, move);
+                    moves++;
+                    same = same(bdd, bits);
+                }
+            }
+            allSame &= same;
+
+            double bddMicros = microsPerMove(bdd, n, games);
+            double bitsMicros = microsPerMove(bits, n, games);
+            report.append(String.format("%4d %8d %8d %8s %14.1f %14.1f %10.1f%n", n, games, moves, same,
+                    bddMicros, bitsMicros, bddMicros / bitsMicros));
+        }
+
+        System.out.println();
+        System.out.print(report);
+        if(!allSame) System.exit(1);
+    }
+
+    private static boolean same(MyLogic bdd, BitboardLogic bits) {
+        return Arrays.deepEquals(bdd.getBoard(), bits.getBoard())
+                && bdd.getSolutionCount().equals(bits.getSolutionCount())
+                && Arrays.deepEquals(bdd.getSolutionCounts(), bits.getSolutionCounts());
+    }
+
+    /**
+     * Returns the mean time of a move in random games on the logic, after
+     * the same number of games to warm up
+     */
+    private static double microsPerMove(IUndoableQueensLogic logic, int n, int games) {
+        Random random = new Random(-n);
+        long nanos = 0;
+        int moves = 0;
+        for(int game = -games; game < games; game++) {
+            logic.initializeBoard(n);
+            int played = 0;
+            long start = System.nanoTime();
+            for(int step = 0; step < 2 * n; step++) {
+                int[] move = RandomMoves.next(logic.getBoard(), random);
+                if(move == null) break;
+                RandomMoves.play(logic, move);
+                played++;
+            }
+            if(game < 0) continue;
+            nanos += System.nanoTime() - start;
+            moves += played;
+        }
+        return nanos / 1000.0 / Math.max(1, moves);
+    }
+}
@@ -0,0 +1,108 @@
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The rules restricted by a set of placed queens, together with the board
+ * they give. Placed queens are kept as a set of cells, cell column*size+row,
+ * so the same queens placed in a different order give the same state.
+ *
+ * @author Sabina Hult
+ */
+public class BoardState {
+    // property for the number of states kept by a Cache
+    public static final String PROPERTY = "queens.statecache";
+    public static final int DEFAULT_CAPACITY = 128;
+
+    private final BitSet placed;
+    private final int bdd;
+    private final int[][] board;
+
+    public BoardState(BitSet placed, int bdd, int[][] board) {
+        this.placed = (BitSet) placed.clone();
+        this.bdd = bdd;
+        this.board = board;
+    }
+
+    public BitSet getPlaced() {
+        return (BitSet) placed.clone();
+    }
+
+    /**
+     * Returns the restricted rules. The BDD belongs to the state and must not be freed
+     */
+    public int getBDD() {
+        return bdd;
+    }
+
+    /**
+     * Returns a copy of the board, which can be changed without changing the state
+     */
+    public int[][] copyBoard() {
+        int[][] copy = new int[board.length][];
+        for(int c = 0; c < board.length; c++) copy[c] = board[c].clone();
+        return copy;
+    }
+
+    public static int cell(int column, int row, int size) {
+        return column * size + row;
+    }
+
+    /**
+     * Keeps the most recently used states of one compiled board, so going back
+     * to a set of queens seen before needs no BDD operations. The BDD of a state
+     * is freed when the state is evicted
+     */
+    public static class Cache {
+        private final CompiledBoard compiled;
+        private final LinkedHashMap<BitSet, BoardState> states;
+
+        public Cache(CompiledBoard compiled, int capacity) {
+            this.compiled = compiled;
+            // access order, so the eldest entry is the least recently used
+            this.states = new LinkedHashMap<BitSet, BoardState>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<BitSet, BoardState> eldest) {
+                    if(size() <= capacity) return false;
+                    compiled.free(eldest.getValue().bdd);
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * Returns a cache holding as many states as the system property
+         * queens.statecache says, 128 if it is not set
+         */
+        public static Cache fromProperty(CompiledBoard compiled) {
+            return new Cache(compiled, Math.max(1, Integer.getInteger(PROPERTY, DEFAULT_CAPACITY)));
+        }
+
+        /**
+         * Returns the state of the placed queens, or null if it is not cached
+         */
+        public BoardState get(BitSet placed) {
+            return states.get(placed);
+        }
+
+        /**
+         * Caches a state, which from now on owns its BDD
+         */
+        public void put(BoardState state) {
+            BoardState old = states.put(state.placed, state);
+            if(old != null && old != state) compiled.free(old.bdd);
+        }
+
+        public int size() {
+            return states.size();
+        }
+
+        /**
+         * Frees the BDDs of all the cached states
+         */
+        public void clear() {
+            for(BoardState state : states.values()) compiled.free(state.bdd);
+            states.clear();
+        }
+    }
+}
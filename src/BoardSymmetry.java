@@ -0,0 +1,183 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The eight symmetries of a square board, the rotations and the
+ * reflections. A symmetry moves the cell [column, row] to another cell and
+ * so a solution to another solution, as long as the pieces move the same
+ * way in every direction and the blocked cells are moved onto blocked cells.
+ *
+ * The solutions a symmetry moves into each other are the same solution
+ * turned or mirrored. Of every such set of solutions the one that comes
+ * first in the order of compare is its fundamental solution.
+ *
+ * The system property queens.symmetry chooses whether MyLogic compiles
+ * every solution (full, the default) or mainly the fundamental ones
+ * (reduced), see SymmetricBoard.
+ *
+ * @author Sabina Hult
+ */
+public enum BoardSymmetry {
+    IDENTITY {
+        @Override
+        public int map(int column, int row, int size) {
+            return BoardState.cell(column, row, size);
+        }
+    },
+
+    ROTATE_90 {
+        @Override
+        public int map(int column, int row, int size) {
+            return BoardState.cell(size - 1 - row, column, size);
+        }
+    },
+
+    ROTATE_180 {
+        @Override
+        public int map(int column, int row, int size) {
+            return BoardState.cell(size - 1 - column, size - 1 - row, size);
+        }
+    },
+
+    ROTATE_270 {
+        @Override
+        public int map(int column, int row, int size) {
+            return BoardState.cell(row, size - 1 - column, size);
+        }
+    },
+
+    /**
+     * Swaps the left and the right side of the board
+     */
+    MIRROR_COLUMNS {
+        @Override
+        public int map(int column, int row, int size) {
+            return BoardState.cell(size - 1 - column, row, size);
+        }
+    },
+
+    /**
+     * Swaps the top and the bottom of the board
+     */
+    MIRROR_ROWS {
+        @Override
+        public int map(int column, int row, int size) {
+            return BoardState.cell(column, size - 1 - row, size);
+        }
+    },
+
+    /**
+     * Mirrors the board in the diagonal from the top left corner
+     */
+    MIRROR_DIAGONAL {
+        @Override
+        public int map(int column, int row, int size) {
+            return BoardState.cell(row, column, size);
+        }
+    },
+
+    /**
+     * Mirrors the board in the diagonal from the top right corner
+     */
+    MIRROR_ANTI_DIAGONAL {
+        @Override
+        public int map(int column, int row, int size) {
+            return BoardState.cell(size - 1 - row, size - 1 - column, size);
+        }
+    };
+
+    /**
+     * Name of the system property choosing full or reduced compilation
+     */
+    public static final String PROPERTY = "queens.symmetry";
+
+    /**
+     * Returns the cell column*size+row that [column, row] is moved to
+     */
+    public abstract int map(int column, int row, int size);
+
+    /**
+     * Returns the cell that cell is moved to, both column*size+row
+     */
+    public int map(int cell, int size) {
+        return map(cell / size, cell % size, size);
+    }
+
+    /**
+     * Returns the symmetry that moves every cell back
+     */
+    public BoardSymmetry inverse() {
+        switch(this) {
+            case ROTATE_90: return ROTATE_270;
+            case ROTATE_270: return ROTATE_90;
+            default: return this;
+        }
+    }
+
+    /**
+     * Returns the set of cells, column*size+row, moved by the symmetry
+     */
+    public BitSet apply(BitSet cells, int size) {
+        BitSet moved = new BitSet();
+        for(int cell = cells.nextSetBit(0); cell >= 0; cell = cells.nextSetBit(cell + 1)) {
+            moved.set(map(cell, size));
+        }
+        return moved;
+    }
+
+    /**
+     * Returns the symmetries that move every solution of the variant to a
+     * solution, which are those moving the blocked cells onto blocked cells
+     */
+    public static List<BoardSymmetry> of(BoardVariant variant) {
+        int size = variant.getSize();
+        List<BoardSymmetry> group = new ArrayList<>();
+        for(BoardSymmetry symmetry : values()) {
+            boolean keepsBlocked = true;
+            for(int c = 0; c < size && keepsBlocked; c++) {
+                for(int r = 0; r < size && keepsBlocked; r++) {
+                    int cell = symmetry.map(c, r, size);
+                    keepsBlocked = variant.isBlocked(c, r) == variant.isBlocked(cell / size, cell % size);
+                }
+            }
+            if(keepsBlocked) group.add(symmetry);
+        }
+        return group;
+    }
+
+    /**
+     * Returns true if the system property asks for reduced compilation
+     */
+    public static boolean isReducedFromProperty() {
+        String mode = System.getProperty(PROPERTY, "full").trim().toLowerCase();
+        switch(mode) {
+            case "full": return false;
+            case "reduced": return true;
+            default: throw new IllegalArgumentException("Unknown " + PROPERTY + " " + mode + ", use full or reduced");
+        }
+    }
+
+    /**
+     * Orders two sets of cells by the first cell in one and not the other,
+     * the set holding it coming first
+     */
+    public static int compare(BitSet a, BitSet b) {
+        BitSet difference = (BitSet) a.clone();
+        difference.xor(b);
+        int first = difference.nextSetBit(0);
+        if(first < 0) return 0;
+        return a.get(first) ? -1 : 1;
+    }
+
+    /**
+     * Returns true if the solution is the fundamental solution of the
+     * solutions the symmetries move it to
+     */
+    public static boolean isFundamental(BitSet solution, List<BoardSymmetry> group, int size) {
+        for(BoardSymmetry symmetry : group) {
+            if(compare(symmetry.apply(solution, size), solution) < 0) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.BitSet;
+
+/**
+ * A puzzle of the n-queens kind: place count pieces that move like the
+ * given PieceMoves on a size x size board so that no two attack each other
+ * and no piece stands on a blocked cell. Blocked cells also stop riding
+ * pieces, like a wall.
+ *
+ * Boards that are not square are square boards with the cells outside the
+ * rectangle blocked, so the board shown to the user keeps its shape.
+ *
+ * The variant used by MyLogic is chosen with the system property
+ * queens.variant, either one of the names below or a piece in Betza's
+ * notation (see PieceMoves), optionally followed by :count. The default
+ * is queens.
+ *
+ *  queens  - size queens (Q)
+ *  rooks   - size rooks (R)
+ *  kings   - ceil(size/2)^2 kings (K), the most that fit
+ *  knights - ceil(size^2/2) knights (N), the most that fit from size 3 on
+ *  amazons - size pieces moving as queen and knight (QN)
+ *
+ * @author Sabina Hult
+ */
+public class BoardVariant {
+    public static final String PROPERTY = "queens.variant";
+
+    private final String name;
+    private final PieceMoves moves;
+    private final int size;
+    private final int count;
+    // cell column*size+row
+    private final BitSet blocked;
+
+    public BoardVariant(String name, PieceMoves moves, int size, int count, BitSet blocked) {
+        if(size < 1) throw new IllegalArgumentException("The board needs at least one cell");
+        if(count < 0) throw new IllegalArgumentException("Can not place " + count + " pieces");
+        this.name = name;
+        this.moves = moves;
+        this.size = size;
+        this.count = count;
+        this.blocked = (BitSet) blocked.clone();
+    }
+
+    public static BoardVariant queens(int size) {
+        return new BoardVariant("queens", PieceMoves.parse("Q"), size, size, new BitSet());
+    }
+
+    public static BoardVariant rooks(int size) {
+        return new BoardVariant("rooks", PieceMoves.parse("R"), size, size, new BitSet());
+    }
+
+    public static BoardVariant kings(int size) {
+        int side = (size + 1) / 2;
+        return new BoardVariant("kings", PieceMoves.parse("K"), size, side * side, new BitSet());
+    }
+
+    public static BoardVariant knights(int size) {
+        int count = size == 2 ? 4 : (size * size + 1) / 2;
+        return new BoardVariant("knights", PieceMoves.parse("N"), size, count, new BitSet());
+    }
+
+    public static BoardVariant amazons(int size) {
+        return new BoardVariant("amazons", PieceMoves.parse("QN"), size, size, new BitSet());
+    }
+
+    /**
+     * Returns the variant with the given name, or size pieces moving as
+     * the notation says, optionally followed by :count
+     */
+    public static BoardVariant named(String spec, int size) {
+        String[] parts = spec.trim().split(":");
+        BoardVariant variant;
+        switch(parts[0].toLowerCase()) {
+            case "queens": variant = queens(size); break;
+            case "rooks": variant = rooks(size); break;
+            case "kings": variant = kings(size); break;
+            case "knights": variant = knights(size); break;
+            case "amazons": variant = amazons(size); break;
+            default: variant = new BoardVariant(parts[0], PieceMoves.parse(parts[0]), size, size, new BitSet());
+        }
+        if(parts.length > 1) variant = variant.withCount(Integer.parseInt(parts[1].trim()));
+        return variant;
+    }
+
+    /**
+     * Returns the variant named by the system property for a size x size
+     * board, or queens if the property is not set
+     */
+    public static BoardVariant fromProperty(int size) {
+        return named(System.getProperty(PROPERTY, "queens"), size);
+    }
+
+    /**
+     * Returns this variant with another number of pieces to place
+     */
+    public BoardVariant withCount(int count) {
+        return new BoardVariant(name, moves, size, count, blocked);
+    }
+
+    /**
+     * Returns this variant with no piece allowed on [column, row]
+     */
+    public BoardVariant block(int column, int row) {
+        BitSet more = (BitSet) blocked.clone();
+        more.set(BoardState.cell(column, row, size));
+        return new BoardVariant(name, moves, size, count, more);
+    }
+
+    /**
+     * Returns this variant on the width x height rectangle in the top left
+     * corner of the board, blocking every cell outside it
+     */
+    public BoardVariant rectangle(int width, int height) {
+        BitSet more = (BitSet) blocked.clone();
+        for(int c = 0; c < size; c++) {
+            for(int r = 0; r < size; r++) {
+                if(c >= width || r >= height) more.set(BoardState.cell(c, r, size));
+            }
+        }
+        return new BoardVariant(name, moves, size, count, more);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public PieceMoves getMoves() {
+        return moves;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isBlocked(int column, int row) {
+        return blocked.get(BoardState.cell(column, row, size));
+    }
+
+    /**
+     * Returns a string that is the same for two variants exactly when they
+     * have the same rules, used to cache their compiled rules
+     */
+    public String getKey() {
+        StringBuilder key = new StringBuilder(moves.canonical()).append('-').append(size).append('-').append(count);
+        if(!blocked.isEmpty()) {
+            key.append("-b");
+            for(long word : blocked.toLongArray()) key.append(Long.toHexString(word)).append('.');
+        }
+        return key.toString();
+    }
+
+    @Override
+    public String toString() {
+        String shape = size + "x" + size + (blocked.isEmpty() ? "" : " with " + blocked.cardinality() + " blocked cells");
+        return count + " " + name + " (" + moves + ") on " + shape;
+    }
+}
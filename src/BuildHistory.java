@@ -0,0 +1,121 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Remembers the fastest and the latest build time of every kind of board,
+ * so a change that makes a variant slower to build is noticed instead of
+ * quietly slowing down startup. A build that takes more than half as long
+ * again as the fastest one recorded is reported on standard error.
+ *
+ * The times are kept in a properties file, key=fastest,latest in ms, given
+ * by the system property queens.buildhistory (default build-times.properties
+ * in the BDD cache directory, off when the cache is); the value none turns
+ * the history off.
+ *
+ * @author Sabina Hult
+ */
+public class BuildHistory {
+    public static final String PROPERTY = "queens.buildhistory";
+    private static final String DEFAULT_FILE = "build-times.properties";
+
+    // a build is slower than the fastest one if it takes this much longer
+    private static final double TOLERANCE = 1.5;
+    // and at least this many ms longer, short builds vary a lot
+    private static final long MIN_DIFFERENCE = 50;
+
+    private final File file;
+
+    public BuildHistory(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the history in the file named by the system property, or null
+     * if the history is turned off
+     */
+    public static BuildHistory fromProperty() {
+        String name = System.getProperty(PROPERTY);
+        if(name == null) {
+            String dir = System.getProperty(BDDCache.PROPERTY, "bddcache");
+            return dir.equals("none") ? null : new BuildHistory(new File(dir, DEFAULT_FILE));
+        }
+        if(name.equals("none")) return null;
+        return new BuildHistory(new File(name));
+    }
+
+    /**
+     * Returns the key the builds of a variant are recorded under. The time
+     * depends on the rules, the ordering, the scheduler and the engine
+     */
+    public static String key(BoardVariant variant, VariableOrdering ordering, String strategy, String factory) {
+        return variant.getKey() + "-" + ordering + "-" + strategy + "-" + factory;
+    }
+
+    /**
+     * Returns the fastest build time recorded for the key, or -1 if there is none
+     */
+    public synchronized long getFastest(String key) {
+        String times = load().getProperty(key);
+        return times == null ? -1 : Long.parseLong(times.split(",")[0]);
+    }
+
+    /**
+     * Returns true if a build taking millis is slower than the fastest one
+     */
+    public static boolean isSlower(long millis, long fastest) {
+        return fastest >= 0 && millis > fastest * TOLERANCE && millis - fastest >= MIN_DIFFERENCE;
+    }
+
+    /**
+     * Records the time of a finished build and returns the fastest time
+     * recorded before it, or -1 if it is the first build of its kind.
+     * Failing to read or write the file is reported but otherwise ignored
+     */
+    public synchronized long record(String key, BuildStats stats) {
+        Properties times = load();
+        String old = times.getProperty(key);
+        long fastest = old == null ? -1 : Long.parseLong(old.split(",")[0]);
+
+        long millis = stats.getMillis();
+        if(isSlower(millis, fastest)) {
+            System.err.println("Build of " + key + " took " + millis + " ms, the fastest recorded took " + fastest + " ms");
+        }
+
+        times.setProperty(key, (fastest < 0 ? millis : Math.min(fastest, millis)) + "," + millis);
+        store(times);
+        return fastest;
+    }
+
+    private Properties load() {
+        Properties times = new Properties();
+        if(!file.isFile()) return times;
+        try(InputStream in = new FileInputStream(file)) {
+            times.load(in);
+        } catch(IOException | IllegalArgumentException e) {
+            System.err.println("Ignoring unreadable build history " + file + ": " + e);
+        }
+        return times;
+    }
+
+    private void store(Properties times) {
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            Files.createDirectories(dir.toPath());
+            File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+            try(OutputStream out = new FileOutputStream(tmp)) {
+                times.store(out, "fastest,latest build time in ms");
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException e) {
+            System.err.println("Could not write build history " + file + ": " + e);
+        }
+    }
+}
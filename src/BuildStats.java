@@ -0,0 +1,78 @@
+/**
+ * Keeps track of the time and the peak number of live nodes used while
+ * building a BDD, so different ways of building it can be compared.
+ * Conjunctions may be reported from several threads at once.
+ *
+ * @author Sabina Hult
+ */
+public class BuildStats {
+    private final BDDEngine engine;
+    private final String strategy;
+    private final long start;
+
+    private long millis;
+    private int peakNodes;
+    private int conjunctions;
+    private Sifter sifter;
+
+    public BuildStats(BDDEngine engine, String strategy) {
+        this.engine = engine;
+        this.strategy = strategy;
+        this.start = System.nanoTime();
+        sample();
+    }
+
+    /**
+     * Records the number of nodes currently in use by the engine
+     */
+    public synchronized void sample() {
+        peakNodes = Math.max(peakNodes, engine.getNodeNum());
+    }
+
+    /**
+     * Sift the result of every conjunction when it has grown too large
+     */
+    public void setSifter(Sifter sifter) {
+        this.sifter = sifter;
+    }
+
+    /**
+     * Called after each conjunction of two operands with the result
+     */
+    public synchronized void conjoined(int result) {
+        conjunctions++;
+        sample();
+        if(sifter != null) sifter.check(result);
+    }
+
+    /**
+     * Stops the clock
+     */
+    public void finish() {
+        sample();
+        millis = (System.nanoTime() - start) / 1000000;
+    }
+
+    public String getStrategy() {
+        return strategy;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    public int getPeakNodes() {
+        return peakNodes;
+    }
+
+    public int getConjunctions() {
+        return conjunctions;
+    }
+
+    @Override
+    public String toString() {
+        return strategy + ": " + millis + " ms, peak live nodes " + peakNodes
+                + ", " + conjunctions + " conjunctions"
+                + (sifter != null ? ", " + sifter.getSifts() + " sifts" : "");
+    }
+}
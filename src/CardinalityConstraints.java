@@ -0,0 +1,92 @@
+import java.util.Arrays;
+
+/**
+ * Builds BDDs that bound the number of true variables among a list of
+ * variables, such as exactly one queen in a row or at most one queen on a
+ * diagonal.
+ *
+ * A constraint over m variables with at most k of them true is a counter:
+ * the node for the i-th variable and j trues so far goes to the node for
+ * j + 1 trues if the variable is true and stays at j otherwise. The nodes
+ * are made bottom-up in the current variable order, one engine node call
+ * each, so the BDD has at most m * (k + 1) nodes and needs no apply calls.
+ *
+ * @author Sabina Hult
+ */
+public class CardinalityConstraints {
+    private final BDDEngine engine;
+
+    public CardinalityConstraints(BDDEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Returns the BDD of exactly one of the variables being true
+     */
+    public int exactlyOne(int[] vars) {
+        return between(vars, 1, 1);
+    }
+
+    /**
+     * Returns the BDD of at most one of the variables being true
+     */
+    public int atMostOne(int[] vars) {
+        return between(vars, 0, 1);
+    }
+
+    /**
+     * Returns the BDD of at most k of the variables being true
+     */
+    public int atMostK(int[] vars, int k) {
+        return between(vars, 0, k);
+    }
+
+    /**
+     * Returns the BDD of at least min and at most max of the variables being
+     * true. The variables must be distinct
+     */
+    public int between(int[] vars, int min, int max) {
+        if(min < 0 || max < min) throw new IllegalArgumentException("No count between " + min + " and " + max);
+        int[] sorted = byLevel(vars);
+        max = Math.min(max, sorted.length);
+
+        // counts[j] is the constraint on the variables below for j trues above them
+        int[] counts = new int[max + 1];
+        for(int j = 0; j <= max; j++) counts[j] = j >= min ? engine.one() : engine.zero();
+        int zero = engine.zero();
+
+        for(int i = sorted.length - 1; i >= 0; i--) {
+            // at most i of the variables above this one can be true
+            int[] next = new int[Math.min(i, max) + 1];
+            for(int j = 0; j < next.length; j++) {
+                next[j] = engine.node(sorted[i], counts[j], j < max ? counts[j + 1] : zero);
+            }
+            for(int count : counts) engine.free(count);
+            counts = next;
+        }
+
+        engine.free(zero);
+        return counts[0];
+    }
+
+    /**
+     * Returns the variables sorted by their level in the current order
+     */
+    private int[] byLevel(int[] vars) {
+        int[] levelOf = new int[engine.varNum()];
+        for(int l = 0; l < levelOf.length; l++) levelOf[engine.level2Var(l)] = l;
+
+        int[] levels = new int[vars.length];
+        for(int i = 0; i < vars.length; i++) levels[i] = levelOf[vars[i]];
+        Arrays.sort(levels);
+
+        int[] sorted = new int[vars.length];
+        for(int i = 0; i < vars.length; i++) {
+            if(i > 0 && levels[i] == levels[i - 1]) {
+                throw new IllegalArgumentException("Variable " + engine.level2Var(levels[i]) + " is given twice");
+            }
+            sorted[i] = engine.level2Var(levels[i]);
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,294 @@
+import java.io.File;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Builds the rules of boards too large for one node table in chunks, each
+ * within a budget of nodes, and counts their solutions exactly.
+ *
+ * A chunk is the rules with the first few variables of the order fixed.
+ * Every constraint is restricted by the fixed cells before the constraints
+ * are conjoined, so the chunk never builds the parts of the rules the fixed
+ * cells rule out. A chunk whose build would need more nodes than the budget,
+ * or more heap than is free, is split on the next size variables: one chunk
+ * for every one of them being the first of them set, and one for none of
+ * them set. The chunks partition the solutions, so the exact count is the
+ * sum of their counts.
+ *
+ * Every finished chunk is counted, spilled to disk in the format of
+ * BDDCache and released, so only one chunk is in memory at a time. The
+ * interactive BDD is the disjunction of the spilled chunks. It can be
+ * assembled into an engine with the same node limit, and if it does not fit
+ * a NodeLimitException says so, instead of the process running out of
+ * memory.
+ *
+ * The budget is given by the system property queens.budget (nodes per
+ * node table, default as many as a quarter of the heap holds) and the
+ * spill directory by queens.spill (default spill in the working directory).
+ *
+ * Usage: java ChunkedBuild [from] [to] [nodes]  (board sizes, defaults 8 and
+ * 12, of the variant given by queens.variant, and the budget)
+ *
+ * @author Sabina Hult
+ */
+public class ChunkedBuild {
+    public static final String BUDGET_PROPERTY = "queens.budget";
+    public static final String SPILL_PROPERTY = "queens.spill";
+
+    private final BoardVariant variant;
+    private final VariableOrdering ordering;
+    private final ConjunctionScheduler scheduler;
+    private final int maxNodes;
+    private final BDDCache spill;
+    private final PrintStream progress;
+    private final int size;
+
+    // the finished chunks, in the order of the variables they fix
+    private final List<Chunk> chunks = new ArrayList<>();
+    private BigInteger count;
+
+    public ChunkedBuild(BoardVariant variant, VariableOrdering ordering, ConjunctionScheduler scheduler,
+                        int maxNodes, File spill, PrintStream progress) {
+        this.variant = variant;
+        this.ordering = ordering;
+        this.scheduler = scheduler;
+        this.maxNodes = maxNodes;
+        this.spill = new BDDCache(spill);
+        this.progress = progress;
+        this.size = variant.getSize();
+    }
+
+    /**
+     * Returns a build of the variant within the budget and spill directory
+     * given by the system properties, or null if queens.budget is not set
+     */
+    public static ChunkedBuild fromProperty(BoardVariant variant, VariableOrdering ordering,
+                                            ConjunctionScheduler scheduler) {
+        String budget = System.getProperty(BUDGET_PROPERTY);
+        if(budget == null) return null;
+        return new ChunkedBuild(variant, ordering, scheduler, parseBudget(budget),
+                new File(System.getProperty(SPILL_PROPERTY, "spill")), System.out);
+    }
+
+    /**
+     * Returns the nodes of a budget, either a number or heap for as many
+     * nodes as a quarter of the heap holds
+     */
+    private static int parseBudget(String budget) {
+        if(budget.trim().equals("heap")) {
+            long nodes = Runtime.getRuntime().maxMemory() / 4 / NativeBDD.BYTES_PER_NODE;
+            return (int) Math.min(Integer.MAX_VALUE / 2, nodes);
+        }
+        try {
+            int nodes = Integer.parseInt(budget.trim());
+            if(nodes < 1024) throw new NumberFormatException(budget);
+            return nodes;
+        } catch(NumberFormatException e) {
+            throw new IllegalArgumentException("Unknown value of " + BUDGET_PROPERTY + ": " + budget
+                    + " (heap, or a number of nodes of at least 1024)");
+        }
+    }
+
+    public static void main(String[] args) {
+        int from = args.length >= 1 ? Integer.parseInt(args[0]) : 8;
+        int to = args.length >= 2 ? Integer.parseInt(args[1]) : 12;
+        int nodes = parseBudget(args.length >= 3 ? args[2] : System.getProperty(BUDGET_PROPERTY, "heap"));
+        File spill = new File(System.getProperty(SPILL_PROPERTY, "spill"));
+
+        System.out.printf("%4s %10s %8s %12s %20s %10s %12s%n",
+                "n", "budget", "chunks", "chunk nodes", "solutions", "ms", "BDD nodes");
+        for(int n = from; n <= to; n++) {
+            ChunkedBuild build = new ChunkedBuild(BoardVariant.fromProperty(n), VariableOrdering.fromProperty(),
+                    ConjunctionScheduler.fromProperty(), nodes, spill, System.err);
+            long start = System.nanoTime();
+            BigInteger count = build.count();
+            long millis = (System.nanoTime() - start) / 1000000;
+
+            // the interactive BDD, if it fits the budget as well
+            String bddNodes;
+            NativeBDD engine = build.createEngine();
+            try {
+                int bdd = build.assemble(engine);
+                bddNodes = Integer.toString(engine.nodeCount(bdd));
+                if(!engine.exactSatCount(bdd).equals(count)) bddNodes += " (count differs)";
+                engine.free(bdd);
+            } catch(NodeLimitException e) {
+                bddNodes = "does not fit";
+            }
+
+            System.out.printf("%4d %10d %8d %12d %20s %10d %12s%n", n, nodes, build.getChunks(),
+                    build.getLargestChunk(), count, millis, bddNodes);
+            build.delete();
+        }
+    }
+
+    /**
+     * Builds and spills every chunk, if that was not done yet, and returns
+     * the exact number of solutions
+     */
+    public BigInteger count() {
+        if(count != null) return count;
+        count = BigInteger.ZERO;
+        long start = System.nanoTime();
+        // fractions of the assignments done, as the chunks at each depth
+        double done = 0;
+
+        Deque<int[]> todo = new ArrayDeque<>();
+        todo.push(new int[0]);
+        while(!todo.isEmpty()) {
+            int[] fixed = todo.pop();
+            Chunk chunk;
+            try {
+                chunk = build(fixed);
+            } catch(NodeLimitException e) {
+                if(fixed.length == size * size) throw e;
+                int last = Math.min(fixed.length + size, size * size);
+                progress.printf("Chunk %s needs more than %d nodes, splitting on variables %d to %d%n",
+                        name(fixed), e.getNodes(), fixed.length, last - 1);
+                // pushed backwards, so the chunks are built in the order of the variables
+                todo.push(extend(fixed, last - fixed.length, -1));
+                for(int var = last - 1; var >= fixed.length; var--) todo.push(extend(fixed, var - fixed.length, var));
+                continue;
+            }
+
+            chunks.add(chunk);
+            count = count.add(chunk.count);
+            done += Math.pow(2, -fixed.length);
+            progress.printf("Chunk %s: %d nodes, %s solutions, %.1f%% done, %.1f s%n", name(fixed),
+                    chunk.nodes, chunk.count, 100 * done, (System.nanoTime() - start) / 1e9);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the rules as the disjunction of the spilled chunks, built in
+     * the engine, which should have the node limit of the build set. Throws
+     * a NodeLimitException if the rules do not fit
+     */
+    public int assemble(BDDEngine engine) {
+        count();
+        int rules = engine.zero();
+        for(Chunk chunk : chunks) {
+            if(chunk.count.signum() == 0) continue;
+            NodeGraph graph = spill.load(chunk.key);
+            if(graph == null) throw new IllegalStateException("The spilled chunk " + chunk.key + " could not be read");
+            rules = engine.orWith(rules, graph.toBDD(engine));
+        }
+        return rules;
+    }
+
+    /**
+     * Returns a native engine for the board, limited to the budget
+     */
+    public NativeBDD createEngine() {
+        int n = size * size;
+        int nodes = Math.min(maxNodes, Math.max(FactoryConfig.estimatePeakNodes(size), 2 * n + 16));
+        NativeBDD engine = new NativeBDD(n, nodes, Math.max(1000, nodes / 4));
+        engine.setNodeLimit(maxNodes);
+        return engine;
+    }
+
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * Returns the number of chunks the rules were built in
+     */
+    public int getChunks() {
+        return chunks.size();
+    }
+
+    /**
+     * Returns the nodes of the largest chunk
+     */
+    public int getLargestChunk() {
+        int largest = 0;
+        for(Chunk chunk : chunks) largest = Math.max(largest, chunk.nodes);
+        return largest;
+    }
+
+    /**
+     * Removes the spilled chunks
+     */
+    public void delete() {
+        for(Chunk chunk : chunks) spill.delete(chunk.key);
+    }
+
+    /**
+     * Builds the chunk with the first variables of the order fixed to the
+     * values, counts it and spills it
+     */
+    private Chunk build(int[] fixed) {
+        NativeBDD engine = createEngine();
+        int[][] rows = new VariantRules(variant, ordering).rules(engine);
+
+        int cube = engine.one();
+        for(int var = 0; var < fixed.length; var++) {
+            cube = engine.andWith(cube, fixed[var] == 1 ? engine.ithVar(var) : engine.nithVar(var));
+        }
+        // the fixed cells are left out of every constraint before any is conjoined
+        boolean empty = false;
+        for(int[] row : rows) {
+            for(int i = 0; i < row.length; i++) {
+                int restricted = engine.restrict(row[i], cube);
+                engine.free(row[i]);
+                row[i] = restricted;
+                empty |= engine.isZero(restricted);
+            }
+        }
+        // a constraint the fixed cells break leaves no solutions to build
+        if(empty) return new Chunk(key(fixed), 0, BigInteger.ZERO);
+
+        BuildStats stats = new BuildStats(engine, scheduler.name());
+        int bdd = engine.andWith(scheduler.conjoin(engine, rows, stats), cube);
+        Chunk chunk = new Chunk(key(fixed), engine.nodeCount(bdd), engine.exactSatCount(bdd));
+        if(chunk.count.signum() != 0) spill.save(chunk.key, engine.snapshot(bdd));
+        engine.free(bdd);
+        return chunk;
+    }
+
+    private String key(int[] fixed) {
+        return "chunk-" + variant.getKey() + "-" + ordering + "-" + name(fixed);
+    }
+
+    /**
+     * Returns the values of the fixed variables as a string of 0s and 1s
+     */
+    private static String name(int[] fixed) {
+        StringBuilder name = new StringBuilder("[");
+        for(int value : fixed) name.append(value);
+        return name.append(']').toString();
+    }
+
+    /**
+     * Returns the fixed values followed by the given number of false
+     * variables and then, unless one is -1, the variable one true
+     */
+    private static int[] extend(int[] fixed, int zeros, int one) {
+        int[] extended = new int[fixed.length + zeros + (one < 0 ? 0 : 1)];
+        System.arraycopy(fixed, 0, extended, 0, fixed.length);
+        if(one >= 0) extended[extended.length - 1] = 1;
+        return extended;
+    }
+
+    /**
+     * A finished chunk: its key in the spill directory, its nodes and its
+     * number of solutions
+     */
+    private static class Chunk {
+        final String key;
+        final int nodes;
+        final BigInteger count;
+
+        Chunk(String key, int nodes, BigInteger count) {
+            this.key = key;
+            this.nodes = nodes;
+            this.count = count;
+        }
+    }
+}
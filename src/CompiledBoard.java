@@ -0,0 +1,222 @@
+import java.math.BigInteger;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The compiled rules of an n x n board together with the engine holding
+ * them. The rules BDD is never changed, so one CompiledBoard can be shared
+ * by any number of boards in play, each holding its own restricted copy.
+ *
+ * BDD engines are not thread safe, so every operation on the engine made
+ * through this class is synchronized on the engine.
+ *
+ * @author Sabina Hult
+ */
+public class CompiledBoard {
+    protected final BDDEngine engine;
+    protected final int rules;
+    private final int size;
+    private final VariableOrdering ordering;
+
+    public CompiledBoard(BDDEngine engine, int rules, int size, VariableOrdering ordering) {
+        this.engine = engine;
+        this.rules = rules;
+        this.size = size;
+        this.ordering = ordering;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public BDDEngine getEngine() {
+        return engine;
+    }
+
+    public VariableOrdering getOrdering() {
+        return ordering;
+    }
+
+    /**
+     * Returns the BDD variable of the board position [column, row]
+     */
+    public int varID(int column, int row) {
+        return ordering.varID(column, row, size);
+    }
+
+    /**
+     * Returns a new reference to the rules, to be restricted by a board in play
+     */
+    public int copyRules() {
+        synchronized(engine) {
+            return engine.copy(rules);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the rules, independent of the engine
+     */
+    public NodeGraph snapshotRules() {
+        synchronized(engine) {
+            return engine.snapshot(rules);
+        }
+    }
+
+    /**
+     * Returns a new BDD that is bdd with a queen placed at [column, row]
+     */
+    public int place(int bdd, int column, int row) {
+        QueensMetrics.count("board.restricts");
+        synchronized(engine) {
+            int queen = engine.ithVar(varID(column, row));
+            int placed = engine.restrict(bdd, queen);
+            engine.free(queen);
+            return placed;
+        }
+    }
+
+    /**
+     * Returns a new BDD that is the rules with a queen placed on every cell
+     * in placed, cell column*size+row, in a single restrict
+     */
+    public int placeAll(BitSet placed) {
+        QueensMetrics.count("board.restricts");
+        synchronized(engine) {
+            int queens = queens(placed);
+            int restricted = engine.restrict(rules, queens);
+            engine.free(queens);
+            return restricted;
+        }
+    }
+
+    /**
+     * Returns the solutions with a queen on every cell in placed, each as the
+     * set of cells column*size+row holding a queen
+     */
+    public SolutionEnumerator solutions(BitSet placed) {
+        return new SolutionEnumerator(countSolutions(placed));
+    }
+
+    /**
+     * Returns the counts of the solutions with a queen on every cell in placed,
+     * with the cells column*size+row as items
+     */
+    public SolutionCounter countSolutions(BitSet placed) {
+        int solutions;
+        synchronized(engine) {
+            int queens = queens(placed);
+            solutions = engine.and(rules, queens);
+            engine.free(queens);
+        }
+        return counter(solutions);
+    }
+
+    /**
+     * Returns the number of fundamental solutions, the solutions that are
+     * not another solution turned or mirrored by one of the symmetries
+     */
+    public BigInteger countFundamentalSolutions(List<BoardSymmetry> group) {
+        SolutionEnumerator solutions = new SolutionEnumerator(counter(copyRules()));
+        long fundamental = 0;
+        while(solutions.hasNext()) {
+            if(BoardSymmetry.isFundamental(solutions.next(), group, size)) fundamental++;
+        }
+        return BigInteger.valueOf(fundamental);
+    }
+
+    /**
+     * Returns the counts of the solutions in a BDD obtained from this class,
+     * with the cells column*size+row as items, and frees the BDD
+     */
+    protected SolutionCounter counter(int solutions) {
+        NodeGraph graph;
+        int[] level2Var;
+        synchronized(engine) {
+            graph = engine.snapshot(solutions);
+            engine.free(solutions);
+
+            level2Var = new int[engine.varNum()];
+            for(int l = 0; l < level2Var.length; l++) level2Var[l] = engine.level2Var(l);
+        }
+
+        int[] cellOf = new int[size * size];
+        for(int c = 0; c < size; c++) {
+            for(int r = 0; r < size; r++) cellOf[varID(c, r)] = BoardState.cell(c, r, size);
+        }
+        return new SolutionCounter(graph, level2Var, cellOf);
+    }
+
+    /**
+     * Returns a new reference to bdd, to be freed independently of it
+     */
+    public int copy(int bdd) {
+        synchronized(engine) {
+            return engine.copy(bdd);
+        }
+    }
+
+    /**
+     * Releases a BDD obtained from this class
+     */
+    public void free(int bdd) {
+        synchronized(engine) {
+            engine.free(bdd);
+        }
+    }
+
+    /**
+     * Returns the number of nodes of a BDD obtained from this class
+     */
+    public int nodeCount(int bdd) {
+        synchronized(engine) {
+            return engine.nodeCount(bdd);
+        }
+    }
+
+    /**
+     * Returns the board given by the placed queens, cell column*size+row,
+     * and the rules restricted by them
+     */
+    public int[][] boardOf(BitSet placed, int bdd) {
+        int[][] board = new int[size][size];
+        for(int cell = placed.nextSetBit(0); cell >= 0; cell = placed.nextSetBit(cell + 1)) {
+            board[cell / size][cell % size] = 1;
+        }
+        updateBoard(placed, bdd, board);
+        return board;
+    }
+
+    /**
+     * Returns the conjunction of the variables of the cells in placed. The
+     * caller must hold the lock on the engine
+     */
+    protected int queens(BitSet placed) {
+        int queens = engine.one();
+        for(int cell = placed.nextSetBit(0); cell >= 0; cell = placed.nextSetBit(cell + 1)) {
+            queens = engine.andWith(queens, engine.ithVar(varID(cell / size, cell % size)));
+        }
+        return queens;
+    }
+
+    /**
+     * Update the board such that positions that are rendered invalid by the
+     * bdd get value -1 and positions where a queen must be placed get a 1.
+     * The bdd is the rules restricted by the placed queens
+     */
+    public void updateBoard(BitSet placed, int bdd, int[][] board) {
+        // one pass over the bdd finds the possible values of every variable
+        QueensMetrics.count("board.propagations");
+        int[] domains;
+        synchronized(engine) {
+            domains = engine.varDomains(bdd);
+        }
+
+        for(int r = 0; r < size; r++) {
+            for(int c = 0; c < size; c++) {
+                // placed queens are restricted away and therefore show up as free
+                int domain = domains[varID(c, r)];
+                if(domain != DomainPropagator.FREE) board[c][r] = domain;
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP front-end serving many n-queens sessions at once on top of
+ * a SessionManager. Boards are returned as JSON, indexed [column][row] as
+ * in IQueensLogic.getBoard.
+ *
+ *  POST   /sessions?size=8                    start a session
+ *  GET    /sessions/{id}                      the board of a session
+ *  POST   /sessions/{id}/queens?column=c&row=r insert a queen
+ *  DELETE /sessions/{id}                      end a session
+ *
+ * Boards larger than the system property queens.maxsize (default 12) are
+ * refused, as compiling them could exhaust the memory shared by all sessions.
+ *
+ * Usage: java ConfiguratorServer [port]  (default 8080, bound to localhost)
+ *
+ * @author Sabina Hult
+ */
+public class ConfiguratorServer {
+    public static final String MAX_SIZE_PROPERTY = "queens.maxsize";
+    private static final int DEFAULT_MAX_SIZE = 12;
+
+    // sessions unused for this long are closed
+    private static final long IDLE_MILLIS = 30 * 60 * 1000;
+
+    private final SessionManager manager;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    // closes idle sessions while the server runs
+    private Thread reaper;
+    private final int maxSize = Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE);
+
+    public ConfiguratorServer(SessionManager manager, int port) throws IOException {
+        this.manager = manager;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/sessions", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length >= 1 ? Integer.parseInt(args[0]) : 8080;
+        ConfiguratorServer server = new ConfiguratorServer(new SessionManager(), port);
+        server.start();
+        System.out.println("Serving n-queens sessions on http://localhost:" + port + "/sessions");
+    }
+
+    public void start() {
+        server.start();
+
+        reaper = new Thread(() -> {
+            while(true) {
+                try {
+                    Thread.sleep(IDLE_MILLIS / 10);
+                } catch(InterruptedException e) {
+                    return;
+                }
+                manager.closeIdleSessions(IDLE_MILLIS);
+            }
+        }, "session-reaper");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    /**
+     * Stops the server and the reaper, and closes every session left
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        if(reaper != null) reaper.interrupt();
+        manager.closeAllSessions();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            URI uri = exchange.getRequestURI();
+            String[] path = uri.getPath().replaceAll("/+$", "").split("/");
+            Map<String, String> query = parseQuery(uri.getRawQuery());
+            String method = exchange.getRequestMethod();
+
+            // path is "", "sessions", id, "queens"
+            if(path.length == 2 && method.equals("POST")) {
+                int size = Integer.parseInt(query.getOrDefault("size", "8"));
+                if(size <= 4) {
+                    send(exchange, 400, error("Board size should be greater than 4"));
+                    return;
+                }
+                if(size > maxSize) {
+                    send(exchange, 400, error("Board size should be at most " + maxSize));
+                    return;
+                }
+                send(exchange, 201, toJson(manager.createSession(size)));
+                return;
+            }
+            if(path.length < 3) {
+                send(exchange, 404, error("Unknown resource"));
+                return;
+            }
+
+            Session session = manager.getSession(path[2]);
+            if(session == null) {
+                send(exchange, 404, error("Unknown session " + path[2]));
+                return;
+            }
+
+            if(path.length == 3 && method.equals("GET")) {
+                send(exchange, 200, toJson(session));
+            } else if(path.length == 3 && method.equals("DELETE")) {
+                manager.closeSession(session.getId());
+                send(exchange, 204, null);
+            } else if(path.length == 4 && path[3].equals("queens") && method.equals("POST")) {
+                int column = Integer.parseInt(query.get("column"));
+                int row = Integer.parseInt(query.get("row"));
+                int size = session.getBoard().length;
+                if(column < 0 || column >= size || row < 0 || row >= size) {
+                    send(exchange, 400, error("Position outside the board"));
+                    return;
+                }
+                session.insertQueen(column, row);
+                send(exchange, 200, toJson(session));
+            } else {
+                send(exchange, 405, error("Method not allowed"));
+            }
+        } catch(NumberFormatException e) {
+            send(exchange, 400, error("Missing or invalid number: " + e.getMessage()));
+        } catch(SessionClosedException e) {
+            // closed by another request or the idle reaper after it was looked up
+            send(exchange, 410, error(e.getMessage()));
+        } catch(RuntimeException e) {
+            send(exchange, 500, error(e.toString()));
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if(query == null) return params;
+        for(String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if(eq > 0) params.put(pair.substring(0, eq), pair.substring(eq + 1));
+        }
+        return params;
+    }
+
+    private static String toJson(Session session) {
+        int[][] board = session.copyBoard();
+        List<int[]> queens = session.getPlacedQueens();
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"id\": \"").append(session.getId()).append("\", \"size\": ").append(board.length);
+        json.append(", \"queens\": [");
+        for(int i = 0; i < queens.size(); i++) {
+            if(i > 0) json.append(", ");
+            json.append('[').append(queens.get(i)[0]).append(", ").append(queens.get(i)[1]).append(']');
+        }
+        json.append("], \"board\": [");
+        for(int c = 0; c < board.length; c++) {
+            if(c > 0) json.append(", ");
+            json.append('[');
+            for(int r = 0; r < board.length; r++) {
+                if(r > 0) json.append(", ");
+                json.append(board[c][r]);
+            }
+            json.append(']');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String error(String message) {
+        return "{\"error\": \"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        if(body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try(OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
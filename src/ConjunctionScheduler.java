@@ -0,0 +1,155 @@
+import java.util.PriorityQueue;
+
+/**
+ * Strategies for conjoining a large number of constraint BDDs into one.
+ * The order in which the operands are combined does not change the result,
+ * but it decides how large the intermediate BDDs grow on the way.
+ *
+ * The operands are given as BDDEngine handles grouped by board row. Every
+ * strategy consumes the operands it is given.
+ *
+ * @author Sabina Hult
+ */
+public enum ConjunctionScheduler {
+
+    /**
+     * Conjoins every operand into a single accumulator in the order given
+     */
+    LINEAR {
+        @Override
+        int conjoin(BDDEngine engine, int[][] rows, BuildStats stats) {
+            int result = NONE;
+            for(int[] row : rows) {
+                for(int operand : row) {
+                    result = and(engine, result, operand, stats);
+                }
+            }
+            return result;
+        }
+    },
+
+    /**
+     * Conjoins the constraints of each row on their own, and then adds the
+     * rows to the accumulator from the top of the board to the bottom
+     */
+    ROW_BY_ROW {
+        @Override
+        int conjoin(BDDEngine engine, int[][] rows, BuildStats stats) {
+            int result = NONE;
+            for(int[] row : rows) {
+                int rowBDD = NONE;
+                for(int operand : row) {
+                    rowBDD = and(engine, rowBDD, operand, stats);
+                }
+                result = and(engine, result, rowBDD, stats);
+            }
+            return result;
+        }
+    },
+
+    /**
+     * Conjoins neighbouring operands pairwise, halving the number of operands
+     * in every round, so all intermediate BDDs are built from equally many rules
+     */
+    BALANCED_TREE {
+        @Override
+        int conjoin(BDDEngine engine, int[][] rows, BuildStats stats) {
+            int[] level = flatten(rows);
+            while(level.length > 1) {
+                int[] next = new int[(level.length + 1) / 2];
+                for(int i = 0; i + 1 < level.length; i += 2) {
+                    next[i / 2] = and(engine, level[i], level[i + 1], stats);
+                }
+                if(level.length % 2 == 1) next[next.length - 1] = level[level.length - 1];
+                level = next;
+            }
+            return level[0];
+        }
+    },
+
+    /**
+     * Always conjoins the two operands with the fewest nodes, using a
+     * priority queue ordered by node count
+     */
+    SMALLEST_FIRST {
+        @Override
+        int conjoin(BDDEngine engine, int[][] rows, BuildStats stats) {
+            PriorityQueue<Operand> queue = new PriorityQueue<>();
+            for(int operand : flatten(rows)) {
+                queue.add(new Operand(operand, engine.nodeCount(operand)));
+            }
+
+            while(queue.size() > 1) {
+                int first = queue.poll().bdd;
+                int second = queue.poll().bdd;
+                int result = and(engine, first, second, stats);
+                queue.add(new Operand(result, engine.nodeCount(result)));
+            }
+            return queue.poll().bdd;
+        }
+    };
+
+    /**
+     * Name of the system property used to choose the strategy
+     */
+    public static final String PROPERTY = "queens.conjunction";
+
+    // an accumulator with no operands yet
+    private static final int NONE = -1;
+
+    /**
+     * Returns the conjunction of all the operands. There must be at least one
+     */
+    abstract int conjoin(BDDEngine engine, int[][] rows, BuildStats stats);
+
+    /**
+     * Returns the strategy named by the system property, or BALANCED_TREE if
+     * the property is not set
+     */
+    public static ConjunctionScheduler fromProperty() {
+        String name = System.getProperty(PROPERTY);
+        if(name == null) return BALANCED_TREE;
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+
+    /**
+     * Conjoins the two operands, consuming both. A missing accumulator
+     * counts as True
+     */
+    private static int and(BDDEngine engine, int accumulator, int operand, BuildStats stats) {
+        if(accumulator == NONE) return operand;
+        int result = engine.andWith(accumulator, operand);
+        stats.conjoined(result);
+        return result;
+    }
+
+    private static int[] flatten(int[][] rows) {
+        int size = 0;
+        for(int[] row : rows) size += row.length;
+
+        int[] operands = new int[size];
+        int i = 0;
+        for(int[] row : rows) {
+            for(int operand : row) operands[i++] = operand;
+        }
+        return operands;
+    }
+
+    /**
+     * An operand in the priority queue, ordered by its node count
+     */
+    private static class Operand implements Comparable<Operand> {
+        final int bdd;
+        final int nodes;
+
+        Operand(int bdd, int nodes) {
+            this.bdd = bdd;
+            this.nodes = nodes;
+        }
+
+        @Override
+        public int compareTo(Operand other) {
+            return Integer.compare(nodes, other.nodes);
+        }
+    }
+}
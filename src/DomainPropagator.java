@@ -0,0 +1,181 @@
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+
+import net.sf.javabdd.BDD;
+import net.sf.javabdd.BDDFactory;
+
+/**
+ * Finds, for every variable of a BDD at once, whether it is forced to true,
+ * forced to false or still free, by walking the node graph a single time.
+ *
+ * Every node reachable from the root of a reduced BDD (other than False) lies
+ * on at least one path to True. A variable can therefore be true if some
+ * reachable node testing it has a high child different from False, and it can
+ * be false if some such node has a low child different from False. A variable
+ * whose level is skipped by a reachable edge can take both values.
+ *
+ * @author Sabina Hult
+ */
+public class DomainPropagator {
+    // possible values for each variable, same encoding as the board
+    public static final int FREE = 0;
+    public static final int TRUE = 1;
+    public static final int FALSE = -1;
+
+    private final BDDFactory fact;
+
+    private Collector collector;
+    private Set<BDD> visited;
+
+    public DomainPropagator(BDDFactory fact) {
+        this.fact = fact;
+    }
+
+    /**
+     * Returns an array indexed by variable holding TRUE if the variable is true
+     * in every satisfying assignment of the bdd, FALSE if it is false in every
+     * satisfying assignment (or if the bdd is unsatisfiable), and FREE otherwise
+     */
+    public int[] propagate(BDD bdd) {
+        collector = new Collector(fact.varNum());
+        visited = new HashSet<>();
+
+        if(!bdd.isZero()) {
+            collector.root(level(bdd));
+            visit(bdd.id());
+        }
+        int[] domains = collector.domains(fact::level2Var);
+
+        for(BDD node : visited) node.free();
+        visited = null;
+        collector = null;
+        return domains;
+    }
+
+    /**
+     * Returns the domains of the BDD of the graph, whose variable i is at level i
+     */
+    public static int[] propagate(NodeGraph graph) {
+        int varNum = graph.varNum();
+        Collector collector = new Collector(varNum);
+        if(graph.root() != NodeGraph.FALSE) {
+            collector.root(graph.isTerminal(graph.root()) ? varNum : graph.var(graph.root()));
+            // every node of a graph is reachable from its root
+            for(int n = 2; n < graph.size(); n++) {
+                int var = graph.var(n);
+                int high = graph.high(n);
+                int low = graph.low(n);
+                if(high != NodeGraph.FALSE) collector.high(var, var, graph.isTerminal(high) ? varNum : graph.var(high));
+                if(low != NodeGraph.FALSE) collector.low(var, var, graph.isTerminal(low) ? varNum : graph.var(low));
+            }
+        }
+        return collector.domains(level -> level);
+    }
+
+    /**
+     * Records the values the variable of the node can take and continues
+     * into every child that is not False. Each node is only expanded once
+     */
+    private void visit(BDD node) {
+        if(node.isOne() || !visited.add(node)) {
+            node.free();
+            return;
+        }
+
+        int var = node.var();
+        int level = fact.var2Level(var);
+        BDD high = node.high();
+        BDD low = node.low();
+
+        if(high.isZero()) {
+            high.free();
+        } else {
+            collector.high(var, level, level(high));
+            visit(high);
+        }
+
+        if(low.isZero()) {
+            low.free();
+        } else {
+            collector.low(var, level, level(low));
+            visit(low);
+        }
+    }
+
+    /**
+     * The level of the node, where the terminal True is below every variable
+     */
+    private int level(BDD node) {
+        return node.isOne() ? fact.varNum() : fact.var2Level(node.var());
+    }
+
+    /**
+     * Gathers the domains from the reachable edges of a BDD, for engines
+     * that walk their own nodes. Levels run from 0 to varNum, where varNum
+     * is the level of True
+     */
+    public static class Collector {
+        private final boolean[] canBeTrue;
+        private final boolean[] canBeFalse;
+        // difference array over the levels skipped by some edge
+        private final int[] skipped;
+
+        public Collector(int varNum) {
+            canBeTrue = new boolean[varNum];
+            canBeFalse = new boolean[varNum];
+            skipped = new int[varNum + 1];
+        }
+
+        /**
+         * Records the root of a BDD other than False. The levels above it
+         * are not tested at all
+         */
+        public void root(int level) {
+            skip(-1, level);
+        }
+
+        /**
+         * Records the high edge of a node to a child other than False
+         */
+        public void high(int var, int level, int childLevel) {
+            canBeTrue[var] = true;
+            skip(level, childLevel);
+        }
+
+        /**
+         * Records the low edge of a node to a child other than False
+         */
+        public void low(int var, int level, int childLevel) {
+            canBeFalse[var] = true;
+            skip(level, childLevel);
+        }
+
+        /**
+         * Returns the domains, indexed by variable, of the edges recorded
+         */
+        public int[] domains(IntUnaryOperator level2Var) {
+            int[] domains = new int[canBeTrue.length];
+            int free = 0;
+            for(int level = 0; level < domains.length; level++) {
+                free += skipped[level];
+                int var = level2Var.applyAsInt(level);
+
+                if(free > 0 || (canBeTrue[var] && canBeFalse[var])) domains[var] = FREE;
+                else if(canBeTrue[var]) domains[var] = TRUE;
+                else domains[var] = FALSE;
+            }
+            return domains;
+        }
+
+        /**
+         * Marks the levels strictly between from and to as free
+         */
+        private void skip(int from, int to) {
+            if(to - from > 1) {
+                skipped[from + 1]++;
+                skipped[to]--;
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * Told by a BDDEngine about the work it does on its own behind the
+ * operations: collecting garbage, growing the node table and reordering
+ * the variables. Engines that do none of these never call it.
+ *
+ * @author Sabina Hult
+ */
+public interface EngineMonitor {
+
+    /**
+     * Called after a garbage collection that took nanos and left freeNodes
+     * of the tableSize nodes free
+     */
+    void collected(long nanos, int tableSize, int freeNodes);
+
+    /**
+     * Called after the node table has grown from oldSize to newSize nodes
+     */
+    void resized(int oldSize, int newSize);
+
+    /**
+     * Called after a reordering that took millis and changed the number of
+     * live nodes from before to after
+     */
+    void reordered(long millis, int before, int after);
+}
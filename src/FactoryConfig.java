@@ -0,0 +1,217 @@
+import net.sf.javabdd.BDDFactory;
+
+/**
+ * Creates and tunes the BDD engine used for a board of a given size.
+ *
+ * The node table and the operation cache are sized from the board size using
+ * the peak number of live nodes measured in earlier builds, so small boards
+ * do not reserve memory they never use and large boards do not spend their
+ * time resizing and collecting garbage. Every choice can be overridden with
+ * a system property:
+ *
+ *  queens.factory    - native for the NativeBDD engine, or the JavaBDD package
+ *                      to use, e.g. java, micro or jdd (default java)
+ *  queens.nodes      - initial size of the node table
+ *  queens.cache      - initial size of the operation cache
+ *  queens.cacheratio - node table entries per cache entry as the table grows
+ *  queens.reorder    - dynamic reordering while building: none, sift, win2,
+ *                      win2ite, win3, win3ite or random (default none)
+ *  queens.threads    - threads used to build the rules, more than one builds
+ *                      them in a ParallelBDD first (default 1)
+ *
+ * @author Sabina Hult
+ */
+public class FactoryConfig {
+    public static final String FACTORY_PROPERTY = "queens.factory";
+    public static final String NODES_PROPERTY = "queens.nodes";
+    public static final String CACHE_PROPERTY = "queens.cache";
+    public static final String CACHE_RATIO_PROPERTY = "queens.cacheratio";
+    public static final String REORDER_PROPERTY = "queens.reorder";
+    public static final String THREADS_PROPERTY = "queens.threads";
+    public static final String NATIVE = "native";
+
+    // size the node table grew to when building the rules for n = 4, 5, ..., 11
+    // from a 10000 node start (BALANCED_TREE scheduler, row-major variable order),
+    // and the peak number of live nodes for n = 12, plus a quarter for headroom
+    private static final int[] MEASURED_PEAK = {
+        10000, 10000, 10000, 37500, 100000, 225000, 790000, 2350000, 7800000
+    };
+    private static final int FIRST_MEASURED = 4;
+    // the measured sizes grow by roughly this factor for every extra row
+    private static final double GROWTH = 3.3;
+
+    // never start below this, the factory needs room for the variables
+    private static final int MIN_NODES = 10000;
+    // node table entries per cache entry
+    private static final int DEFAULT_CACHE_RATIO = 4;
+    // JavaBDD 1.0b2 breaks when the node table grows in the middle of a
+    // reordering, so sifting gets a table large enough to never grow
+    private static final int SIFTING_HEADROOM = 16;
+    private static final int MIN_SIFTING_NODES = 2000000;
+
+    private final String factoryName;
+    private final int nodes;
+    private final int cacheSize;
+    private final int cacheRatio;
+    private final String reorderName;
+    private final BDDFactory.ReorderMethod reorder;
+    private final int threads;
+
+    public FactoryConfig(int n) {
+        factoryName = System.getProperty(FACTORY_PROPERTY, "java");
+        reorderName = System.getProperty(REORDER_PROPERTY, "none").trim().toLowerCase();
+        reorder = parseReorderMethod(reorderName);
+
+        int estimate = estimatePeakNodes(n);
+        if(isSifting()) estimate = (int) Math.min(Integer.MAX_VALUE / 2,
+                Math.max(MIN_SIFTING_NODES, (long) estimate * SIFTING_HEADROOM));
+        nodes = Integer.getInteger(NODES_PROPERTY, estimate);
+        cacheRatio = Integer.getInteger(CACHE_RATIO_PROPERTY, DEFAULT_CACHE_RATIO);
+        cacheSize = Integer.getInteger(CACHE_PROPERTY, Math.max(1000, nodes / cacheRatio));
+
+        threads = Math.max(1, Integer.getInteger(THREADS_PROPERTY, 1));
+        if(threads > 1 && (isReordering() || isSifting())) {
+            throw new IllegalArgumentException("The rules can not be reordered while they are built in parallel, "
+                    + REORDER_PROPERTY + " has to be none when " + THREADS_PROPERTY + " is set");
+        }
+    }
+
+    /**
+     * Throws an IllegalArgumentException if queens.budget is set for a build
+     * reduced by symmetry, since the chunks are built without the symmetry
+     * rules
+     */
+    public static void checkBudget(boolean reduced) {
+        if(reduced && System.getProperty(ChunkedBuild.BUDGET_PROPERTY) != null) {
+            throw new IllegalArgumentException("The rules reduced by symmetry can not be built in chunks, "
+                    + ChunkedBuild.BUDGET_PROPERTY + " can not be set when " + BoardSymmetry.PROPERTY + " is reduced");
+        }
+    }
+
+    /**
+     * Returns the JavaBDD reordering method with the given name
+     */
+    private static BDDFactory.ReorderMethod parseReorderMethod(String name) {
+        switch(name) {
+            case "none": return BDDFactory.REORDER_NONE;
+            // sifting is done by the Sifter, see isSifting
+            case "sift": return BDDFactory.REORDER_NONE;
+            case "win2": return BDDFactory.REORDER_WIN2;
+            case "win2ite": return BDDFactory.REORDER_WIN2ITE;
+            case "win3": return BDDFactory.REORDER_WIN3;
+            case "win3ite": return BDDFactory.REORDER_WIN3ITE;
+            case "random": return BDDFactory.REORDER_RANDOM;
+            default: throw new IllegalArgumentException("Unknown reordering method: " + name);
+        }
+    }
+
+    /**
+     * Returns the estimated peak number of live nodes needed to build the
+     * rules for an n x n board
+     */
+    public static int estimatePeakNodes(int n) {
+        int i = n - FIRST_MEASURED;
+        if(i < 0) return MIN_NODES;
+        if(i < MEASURED_PEAK.length) return Math.max(MIN_NODES, MEASURED_PEAK[i]);
+
+        // extrapolate from the largest measured board
+        double estimate = MEASURED_PEAK[MEASURED_PEAK.length - 1] * Math.pow(GROWTH, i - MEASURED_PEAK.length + 1);
+        return (int) Math.min(Integer.MAX_VALUE / 2, estimate);
+    }
+
+    /**
+     * Returns a new engine with n * n variables, configured for an n x n board
+     */
+    public BDDEngine createEngine(int n) {
+        BDDEngine engine;
+        if(!isNative()) {
+            engine = new JavaBDDEngine(createFactory(n));
+        } else if(isReordering() || isSifting()) {
+            throw new IllegalArgumentException("The native engine has a fixed variable order, "
+                    + REORDER_PROPERTY + " has to be none");
+        } else {
+            engine = new NativeBDD(n * n, nodes, cacheSize);
+        }
+        QueensMetrics.watch(engine);
+        return engine;
+    }
+
+    /**
+     * Returns a new engine for building the rules of an n x n board on
+     * getThreads() threads
+     */
+    public ParallelBDD createParallelEngine(int n) {
+        return new ParallelBDD(n * n, cacheSize, threads);
+    }
+
+    /**
+     * Returns a new JavaBDD factory with n * n variables, configured for an n x n board
+     */
+    public BDDFactory createFactory(int n) {
+        BDDFactory fact = BDDFactory.init(factoryName, nodes, cacheSize);
+
+        // grow in large steps instead of many small resizes on big boards
+        fact.setMaxIncrease(Math.max(50000, nodes / 2));
+        fact.setIncreaseFactor(2);
+        // JavaBDD divides the node table size by a hundred times this value, which it
+        // keeps as (int) (ratio * 100), so half a unit more keeps e.g. 29 from becoming 28
+        fact.setCacheRatio((cacheRatio + 0.5) / 100.0);
+
+        fact.setVarNum(n * n);
+        if(isReordering()) {
+            // every variable may be moved on its own
+            fact.varBlockAll();
+            fact.autoReorder(reorder);
+        }
+        return fact;
+    }
+
+    /**
+     * Stops dynamic reordering once the rules are built, so the variable
+     * order stays fixed while the user is placing queens
+     */
+    public void finishBuild(BDDEngine engine) {
+        if(isReordering()) ((JavaBDDEngine) engine).getFactory().disableReorder();
+    }
+
+    /**
+     * Returns true if the NativeBDD engine is used instead of JavaBDD
+     */
+    public boolean isNative() {
+        return factoryName.equals(NATIVE);
+    }
+
+    public boolean isReordering() {
+        return reorder != BDDFactory.REORDER_NONE;
+    }
+
+    /**
+     * Returns true if the rules should be sifted while they are conjoined
+     */
+    public boolean isSifting() {
+        return reorderName.equals("sift");
+    }
+
+    public String getFactoryName() {
+        return factoryName;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    @Override
+    public String toString() {
+        return factoryName + " factory, " + nodes + " nodes, cache " + cacheSize
+                + ", cache ratio 1:" + cacheRatio + ", reordering " + reorderName
+                + (threads > 1 ? ", " + threads + " build threads" : "");
+    }
+}
@@ -0,0 +1,78 @@
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * Plays small queens boards on bitboards and everything else with BDDs.
+ * Up to the size given by the system property queens.bitboard (default
+ * BitboardLogic.MAX_SIZE, 0 to always use BDDs) a board of queens is played
+ * by a BitboardLogic, which needs no build at all; larger boards and the
+ * other variants (see BoardVariant) are played by a MyLogic.
+ *
+ * @author Sabina Hult
+ */
+public class HybridLogic implements IUndoableQueensLogic, IHintQueensLogic {
+    public static final String PROPERTY = "queens.bitboard";
+
+    private final int threshold = Math.min(BitboardLogic.MAX_SIZE,
+            Integer.getInteger(PROPERTY, BitboardLogic.MAX_SIZE));
+
+    private IUndoableQueensLogic logic;
+
+    @Override
+    public void initializeBoard(int size) {
+        boolean queens = BoardVariant.fromProperty(size).getKey().equals(BoardVariant.queens(size).getKey());
+        if(queens && size <= threshold) {
+            if(!(logic instanceof BitboardLogic)) logic = new BitboardLogic();
+        } else {
+            if(!(logic instanceof MyLogic)) logic = new MyLogic();
+        }
+        logic.initializeBoard(size);
+    }
+
+    /**
+     * Returns the logic playing the current board
+     */
+    public IUndoableQueensLogic getLogic() {
+        return logic;
+    }
+
+    @Override
+    public int[][] getBoard() {
+        return logic.getBoard();
+    }
+
+    @Override
+    public void insertQueen(int column, int row) {
+        logic.insertQueen(column, row);
+    }
+
+    @Override
+    public void removeQueen(int column, int row) {
+        logic.removeQueen(column, row);
+    }
+
+    @Override
+    public boolean undo() {
+        return logic.undo();
+    }
+
+    @Override
+    public boolean redo() {
+        return logic.redo();
+    }
+
+    @Override
+    public BigInteger getSolutionCount() {
+        return ((IHintQueensLogic) logic).getSolutionCount();
+    }
+
+    @Override
+    public BigInteger[][] getSolutionCounts() {
+        return ((IHintQueensLogic) logic).getSolutionCounts();
+    }
+
+    @Override
+    public int[][] getRandomSolution(Random random) {
+        return ((IHintQueensLogic) logic).getRandomSolution(random);
+    }
+}
@@ -0,0 +1,29 @@
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * An interactive configurator of the n-queen problem that can also tell how
+ * the remaining solutions are spread over the board and pick one of them.
+ *
+ * @author Sabina Hult
+ */
+public interface IHintQueensLogic extends IQueensLogic {
+
+	/**
+	 * Returns the number of solutions that keep all the queens placed so far.
+	 */
+	public BigInteger getSolutionCount();
+
+	/**
+	 * Returns for each entry [c][r] the number of solutions that keep all the queens placed so far
+	 * and have a queen in column c and row r. Placed and forced queens count every solution,
+	 * positions where no queen is allowed count none.
+	 */
+	public BigInteger[][] getSolutionCounts();
+
+	/**
+	 * Returns a solution drawn uniformly at random from the ones that keep all the queens placed
+	 * so far, as a board where [c][r] is 1 for a queen and -1 otherwise, or null if there is none.
+	 */
+	public int[][] getRandomSolution(Random random);
+}
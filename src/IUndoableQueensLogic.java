@@ -0,0 +1,28 @@
+/**
+ * An interactive configurator of the n-queen problem where moves can be taken
+ * back, either in the order they were made or one queen at a time in any order.
+ *
+ * @author Sabina Hult
+ */
+public interface IUndoableQueensLogic extends IQueensLogic {
+
+	/**
+	 * Removes a queen placed by insertQueen at the specified position and updates the rest of the
+	 * board accordingly. Nothing happens if no queen was placed there, also when the position
+	 * only holds a queen because the other queens force one there.
+	 */
+	public void removeQueen(int column, int row);
+
+	/**
+	 * Takes back the latest insertQueen or removeQueen that has not been undone.
+	 * @return false if there was nothing to undo
+	 */
+	public boolean undo();
+
+	/**
+	 * Makes the latest undone move again. Any insertQueen or removeQueen after an undo
+	 * discards the moves that could be redone.
+	 * @return false if there was nothing to redo
+	 */
+	public boolean redo();
+}
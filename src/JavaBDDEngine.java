@@ -0,0 +1,258 @@
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import net.sf.javabdd.BDD;
+import net.sf.javabdd.BDDFactory;
+
+/**
+ * A BDDEngine on top of a JavaBDD factory. Each handle is a slot in a table
+ * of BDD objects, so two handles can refer to the same BDD.
+ *
+ * @author Sabina Hult
+ */
+public class JavaBDDEngine implements BDDEngine {
+    private final BDDFactory fact;
+    private final DomainPropagator propagator;
+
+    private BDD[] handles = new BDD[1024];
+    // free slots are linked through this array, ending in -1
+    private int[] nextFree = new int[1024];
+    private int firstFree = -1;
+    private int used;
+    private Callbacks callbacks;
+
+    public JavaBDDEngine(BDDFactory fact) {
+        this.fact = fact;
+        this.propagator = new DomainPropagator(fact);
+    }
+
+    public BDDFactory getFactory() {
+        return fact;
+    }
+
+    /**
+     * Returns the JavaBDD object of a handle, still owned by the handle
+     */
+    public BDD bdd(int f) {
+        return handles[f];
+    }
+
+    /**
+     * Returns a handle taking over the reference of the JavaBDD object
+     */
+    public int handle(BDD bdd) {
+        int f;
+        if(firstFree >= 0) {
+            f = firstFree;
+            firstFree = nextFree[f];
+        } else {
+            if(used == handles.length) {
+                handles = Arrays.copyOf(handles, used * 2);
+                nextFree = Arrays.copyOf(nextFree, used * 2);
+            }
+            f = used++;
+        }
+        handles[f] = bdd;
+        return f;
+    }
+
+    @Override
+    public String getName() {
+        return "javabdd " + fact.getClass().getSimpleName();
+    }
+
+    @Override
+    public int varNum() {
+        return fact.varNum();
+    }
+
+    @Override
+    public int zero() {
+        return handle(fact.zero());
+    }
+
+    @Override
+    public int one() {
+        return handle(fact.one());
+    }
+
+    @Override
+    public int ithVar(int var) {
+        return handle(fact.ithVar(var));
+    }
+
+    @Override
+    public int nithVar(int var) {
+        return handle(fact.nithVar(var));
+    }
+
+    @Override
+    public int and(int f, int g) {
+        return handle(handles[f].and(handles[g]));
+    }
+
+    @Override
+    public int or(int f, int g) {
+        return handle(handles[f].or(handles[g]));
+    }
+
+    @Override
+    public int not(int f) {
+        return handle(handles[f].not());
+    }
+
+    @Override
+    public int ite(int f, int g, int h) {
+        return handle(handles[f].ite(handles[g], handles[h]));
+    }
+
+    @Override
+    public int restrict(int f, int cube) {
+        return handle(handles[f].restrict(handles[cube]));
+    }
+
+    @Override
+    public int andWith(int f, int g) {
+        handles[f].andWith(handles[g]);
+        release(g);
+        return f;
+    }
+
+    @Override
+    public int orWith(int f, int g) {
+        handles[f].orWith(handles[g]);
+        release(g);
+        return f;
+    }
+
+    @Override
+    public int copy(int f) {
+        return handle(handles[f].id());
+    }
+
+    @Override
+    public void free(int f) {
+        handles[f].free();
+        release(f);
+    }
+
+    @Override
+    public boolean isZero(int f) {
+        return handles[f].isZero();
+    }
+
+    @Override
+    public boolean isOne(int f) {
+        return handles[f].isOne();
+    }
+
+    @Override
+    public double satCount(int f) {
+        return handles[f].satCount();
+    }
+
+    @Override
+    public int nodeCount(int f) {
+        return handles[f].nodeCount();
+    }
+
+    @Override
+    public int[] varDomains(int f) {
+        return propagator.propagate(handles[f]);
+    }
+
+    @Override
+    public NodeGraph snapshot(int f) {
+        return NodeGraph.of(handles[f]);
+    }
+
+    @Override
+    public int level2Var(int level) {
+        return fact.level2Var(level);
+    }
+
+    @Override
+    public int getNodeNum() {
+        return fact.getNodeNum();
+    }
+
+    @Override
+    public int getNodeTableSize() {
+        return fact.getNodeTableSize();
+    }
+
+    /**
+     * Registers factory callbacks that pass the factory's garbage collection,
+     * resize and reorder statistics on to the monitor. The factory no longer
+     * prints its own messages about them while a monitor is set
+     */
+    @Override
+    public void setMonitor(EngineMonitor monitor) {
+        try {
+            Method gc = Callbacks.class.getMethod("gc", Integer.class, BDDFactory.GCStats.class);
+            Method resize = Callbacks.class.getMethod("resize", Integer.class, Integer.class);
+            Method reorder = Callbacks.class.getMethod("reorder", Integer.class, BDDFactory.ReorderStats.class);
+            if(callbacks != null) {
+                fact.unregisterGCCallback(callbacks, gc);
+                fact.unregisterResizeCallback(callbacks, resize);
+                fact.unregisterReorderCallback(callbacks, reorder);
+                callbacks = null;
+            }
+            if(monitor == null) return;
+
+            callbacks = new Callbacks(monitor);
+            fact.registerGCCallback(callbacks, gc);
+            fact.registerResizeCallback(callbacks, resize);
+            fact.registerReorderCallback(callbacks, reorder);
+        } catch(NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the operation cache statistics of the factory. JFactory does
+     * not count them, so they are only there for some factories
+     */
+    @Override
+    public long[] getCacheHitsAndMisses() {
+        BDDFactory.CacheStats stats = fact.getCacheStats();
+        if(stats.opHit == 0 && stats.opMiss == 0) return null;
+        return new long[] {stats.opHit, stats.opMiss};
+    }
+
+    /**
+     * Returns the slot of a handle whose BDD has been consumed to the free list
+     */
+    private void release(int f) {
+        handles[f] = null;
+        nextFree[f] = firstFree;
+        firstFree = f;
+    }
+
+    /**
+     * The methods called by the factory, which finds them by reflection, so
+     * they have to be public. The first argument of gc and reorder is 1
+     * before the work starts and 0 after it is done
+     */
+    public static class Callbacks {
+        private final EngineMonitor monitor;
+        private long gcStart;
+
+        Callbacks(EngineMonitor monitor) {
+            this.monitor = monitor;
+        }
+
+        public void gc(Integer pre, BDDFactory.GCStats stats) {
+            if(pre != 0) gcStart = System.nanoTime();
+            else monitor.collected(System.nanoTime() - gcStart, stats.nodes, stats.freenodes);
+        }
+
+        public void resize(Integer oldSize, Integer newSize) {
+            monitor.resized(oldSize, newSize);
+        }
+
+        public void reorder(Integer pre, BDDFactory.ReorderStats stats) {
+            if(pre == 0) monitor.reordered(stats.time, stats.usednum_before, stats.usednum_after);
+        }
+    }
+}
@@ -1,6 +1,10 @@
-import net.sf.javabdd.BDD;
-import net.sf.javabdd.BDDFactory;
-import net.sf.javabdd.JFactory;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.Random;
+import java.util.stream.IntStream;
 
 /**
  * @author Sabina Hult
@@ -9,142 +13,364 @@ import net.sf.javabdd.JFactory;
  * @version 18.3.2019
  */
 
-public class MyLogic implements IQueensLogic {
-    // only square boards allowed
+public class MyLogic implements IUndoableQueensLogic, IHintQueensLogic {
+    // change whenever the rules change, so cached BDDs are built again
+    private static final int RULES_VERSION = 2;
+
+    // only square boards allowed, other shapes are played with the cells
+    // outside them blocked
     private int size;
+    private BoardVariant variant;
     // possible values: 0 (empty), 1 (queen), -1 (no queen allowed)
     private int[][] board;
 
-    private BDDFactory fact;
-    private BDD bdd;
+    private BDDEngine engine;
+    private int bdd;
+    private CompiledBoard compiled;
+
+    // the queens placed by the user, cell column*size+row
+    private BitSet placed;
+    private Deque<BitSet> undoStack;
+    private Deque<BitSet> redoStack;
+    // recently visited states, so undo and redo need no BDD operations
+    private BoardState.Cache states;
+    // solution counts of the queens they were counted for
+    private SolutionCounter counter;
+    private BitSet counted;
+
+    private ConjunctionScheduler scheduler = ConjunctionScheduler.fromProperty();
+    private VariableOrdering ordering = VariableOrdering.fromProperty();
+    private BuildStats buildStats;
+    private BDDCache cache = BDDCache.fromProperty();
+    private BuildHistory history = BuildHistory.fromProperty();
+    // compile only the solutions kept by the symmetry rules
+    private boolean reduced = BoardSymmetry.isReducedFromProperty();
 
     @Override
     public void initializeBoard(int size) {
-        this.size = size;
+        initializeBoard(BoardVariant.fromProperty(size));
+    }
+
+    /**
+     * Starts a new game of the variant, with pieces in place of queens
+     */
+    public void initializeBoard(BoardVariant variant) {
+        if(states != null) states.clear();
+
+        compiled = compile(variant);
         board = new int[size][size];
-        bdd = buildBDDFromRules(size);
+        bdd = compiled.copyRules();
+
+        placed = new BitSet();
+        undoStack = new ArrayDeque<>();
+        redoStack = new ArrayDeque<>();
+        states = BoardState.Cache.fromProperty(compiled);
+        counter = null;
+        // blocked cells, and cells no solution uses, are ruled out from the start
+        updateBoard();
+        remember();
     }
 
-    private BDD buildBDDFromRules(int n) {
-        // initialize the factory with the parameters given in the assignment
-        fact = JFactory.init(2000000, 200000);
-        fact.setVarNum(n * n);
+    /**
+     * Builds the rules for a size x size board of the variant named by the
+     * system property in a new engine. The result can be shared by several
+     * boards in play
+     */
+    public CompiledBoard compile(int size) {
+        return compile(BoardVariant.fromProperty(size));
+    }
 
-        // start with a BDD corresponding to True
-        BDD bdd = fact.one();
-        // add the one-queen-in-each-column rule
-        bdd.andWith(nQueensRule());
+    /**
+     * Builds the rules of the variant in a new engine
+     */
+    public CompiledBoard compile(BoardVariant variant) {
+        this.variant = variant;
+        this.size = variant.getSize();
+        int rules = buildBDDFromRules(size);
+        if(reduced) return new SymmetricBoard(engine, rules, size, ordering);
+        return new CompiledBoard(engine, rules, size, ordering);
+    }
 
-        // for each variable add diagonal rule, horizontal rule and vertical rule
-        for(int i = 0; i < size; i++) {
-            for(int j = 0; j < size; j++) {
-                bdd.andWith(diagonalRule(i, j));
-                bdd.andWith(horizontalRule(i, j));
-                bdd.andWith(verticalRule(i, j));
+    private int buildBDDFromRules(int n) {
+        // initialize an engine sized for the board
+        QueensMetrics.Phase phase = QueensMetrics.phase("engine", variant.toString());
+        FactoryConfig config = new FactoryConfig(n);
+        FactoryConfig.checkBudget(reduced);
+        // a budget of nodes builds the rules in chunks, in native engines limited to the budget
+        ChunkedBuild chunked = ChunkedBuild.fromProperty(variant, ordering, scheduler);
+        engine = chunked != null ? chunked.createEngine() : config.createEngine(n);
+        phase.end(engine);
+
+        // use the rules compiled by an earlier run if there are any
+        String key = cacheKey();
+        phase = QueensMetrics.phase("cacheLoad", variant.toString());
+        NodeGraph cached = cache != null ? cache.load(key) : null;
+        int bdd;
+        if(cached != null && cached.varNum() == n * n) {
+            buildStats = new BuildStats(engine, "CACHE");
+            bdd = cached.toBDD(engine);
+            buildStats.finish();
+            phase.end(engine);
+        } else {
+            phase.end(engine);
+            bdd = chunked != null ? compileRulesInChunks(chunked) : compileRules(n, config);
+            if(cache != null) {
+                phase = QueensMetrics.phase("cacheSave", variant.toString());
+                cache.save(key, engine.snapshot(bdd));
+                phase.end(engine);
             }
+            if(history != null) history.record(historyKey(variant, config, chunked != null), buildStats);
+        }
+        if(chunked != null) {
+            // playing only makes the BDD smaller
+            engine.setNodeLimit(0);
+        } else {
+            config.finishBuild(engine);
         }
 
-        System.out.println("Board: " + n + "x" + n);
-        System.out.println("Satisfying assignments: " + bdd.satCount());
-        System.out.println("Number of nodes: " + bdd.nodeCount());
+        System.out.println("Board: " + variant + ", " + ordering + " variable ordering"
+                + (reduced ? ", reduced by symmetry" : ""));
+        System.out.println("Satisfying assignments: " + engine.exactSatCount(bdd));
+        System.out.println("Number of nodes: " + engine.nodeCount(bdd));
+        System.out.println("Build: " + buildStats);
+        System.out.println("Factory: " + (chunked != null ? "budget of " + chunked.getMaxNodes() + " nodes" : config)
+                + ", " + engine.getName()
+                + " engine, final node table " + engine.getNodeTableSize());
+        QueensMetrics.gauge("nodes.rules", engine.nodeCount(bdd));
         return bdd;
     }
 
     /**
-     * Returns the BDD corresponding to for all columns
-     * exactly one row has a queen, else false
+     * Builds the conjunction of all the rules for an n x n board
      */
-    private BDD nQueensRule() {
-        BDD oneInEachColumn = fact.one();
+    private int compileRules(int n, FactoryConfig config) {
+        if(config.getThreads() > 1) return compileRulesInParallel(n, config);
+
+        // collect the constraints of the variant in one group per row
+        QueensMetrics.Phase phase = QueensMetrics.phase("rules", variant.toString());
+        VariantRules rules = new VariantRules(variant, ordering);
+        int[][] rows = rules.rules(engine);
+        if(reduced) rows = withSymmetryRules(engine, rows, rules.symmetryRules(engine));
+        phase.end(engine);
+
+        // combine all the rules in the order decided by the scheduler
+        phase = QueensMetrics.phase("conjoin", variant.toString());
+        buildStats = new BuildStats(engine, scheduler.name());
+        if(config.isSifting()) buildStats.setSifter(new Sifter((JavaBDDEngine) engine, n));
+        int bdd = scheduler.conjoin(engine, rows, buildStats);
+        buildStats.finish();
+        phase.end(engine);
+        return bdd;
+    }
 
-        // for every column
-        for(int c = 0; c < size; c++) {
-            // either bdd is false
-            BDD column = fact.zero();
-            for(int r = 0; r < size; r++) {
-                // or one of the variables in the column are true
-                column.orWith(fact.ithVar(convertToVarID(c, r)));
-            }
+    /**
+     * Builds the rules in chunks that each fit the budget, and assembles
+     * them in the engine of the board, which has the same budget. Throws a
+     * NodeLimitException if the whole BDD does not fit
+     */
+    private int compileRulesInChunks(ChunkedBuild chunked) {
+        QueensMetrics.Phase phase = QueensMetrics.phase("conjoin", variant.toString());
+        buildStats = new BuildStats(engine, "CHUNKED");
+        BigInteger count = chunked.count();
+        System.out.println("Exact count from " + chunked.getChunks() + " chunks: " + count);
+        phase.end(engine);
+
+        phase = QueensMetrics.phase("copy", variant.toString());
+        try {
+            return chunked.assemble(engine);
+        } catch(NodeLimitException e) {
+            throw new NodeLimitException("The rules of " + variant + " do not fit in " + chunked.getMaxNodes()
+                    + " nodes, though they have " + count + " solutions: " + e.getMessage(), e.getNodes());
+        } finally {
+            buildStats.finish();
+            phase.end(engine);
+            chunked.delete();
+        }
+    }
 
-            // the bdd for each column has to be true in order for the combined bdd to be true
-            oneInEachColumn.andWith(column);
+    /**
+     * Builds the rules on several threads in a ParallelBDD: the constraints of
+     * the rows are made in parallel, then all of them are conjoined in one
+     * balanced tree with its subtrees on different threads, and the result
+     * is copied into the engine of the board
+     */
+    private int compileRulesInParallel(int n, FactoryConfig config) {
+        ParallelBDD parallel = config.createParallelEngine(n);
+        try {
+            buildStats = new BuildStats(parallel, "PARALLEL(" + config.getThreads() + ")");
+            QueensMetrics.Phase phase = QueensMetrics.phase("rules", variant.toString());
+            VariantRules rules = new VariantRules(variant, ordering);
+            int[][] rows = new int[size][];
+            parallel.getPool().submit(() -> IntStream.range(0, size).parallel()
+                    .forEach(r -> rows[r] = rules.rowRules(parallel, r))).join();
+            phase.end(parallel);
+
+            phase = QueensMetrics.phase("conjoin", variant.toString());
+            int bdd = parallel.conjoin(reduced ? withSymmetryRules(parallel, rows, rules.symmetryRules(parallel)) : rows, buildStats);
+            phase.end(parallel);
+
+            phase = QueensMetrics.phase("copy", variant.toString());
+            bdd = parallel.snapshot(bdd).toBDD(engine);
+            buildStats.finish();
+            phase.end(engine);
+            return bdd;
+        } finally {
+            parallel.shutdown();
         }
+    }
 
-        return oneInEachColumn;
+    /**
+     * Returns the rows with the conjunction of the symmetry rules added to
+     * every one of them. It takes a few hundred nodes, and leaving out the
+     * solutions it rules out from the start keeps every intermediate BDD
+     * small, where conjoining it last only makes the final BDD smaller
+     */
+    private static int[][] withSymmetryRules(BDDEngine engine, int[][] rows, int[] symmetry) {
+        int kept = engine.one();
+        for(int rule : symmetry) kept = engine.andWith(kept, rule);
+
+        int[][] all = new int[rows.length][];
+        for(int r = 0; r < rows.length; r++) {
+            all[r] = Arrays.copyOf(rows[r], rows[r].length + 1);
+            all[r][rows[r].length] = engine.copy(kept);
+        }
+        engine.free(kept);
+        return all;
     }
 
     /**
-     * Returns the BDD corresponding to if x[c,r] then
-     * not all other variables in both diagonals, else false
+     * Returns the key the builds of the variant are recorded under in the
+     * BuildHistory, for the strategy the system properties choose
      */
-    private BDD diagonalRule(int c, int r) {
-        // set [c,r] to be true
-        BDD bdd = fact.ithVar(convertToVarID(c, r));
+    public String historyKey(BoardVariant variant) {
+        boolean chunked = System.getProperty(ChunkedBuild.BUDGET_PROPERTY) != null;
+        return historyKey(variant, new FactoryConfig(variant.getSize()), chunked);
+    }
 
-        int left = c-1;
-        int right = c+1;
-        int up = r-1;
-        int down = r+1;
+    private String historyKey(BoardVariant variant, FactoryConfig config, boolean chunked) {
+        String strategy = chunked ? "CHUNKED"
+                : config.getThreads() > 1 ? "PARALLEL(" + config.getThreads() + ")" : scheduler.name();
+        return BuildHistory.key(variant, ordering, strategy + (reduced ? "-REDUCED" : ""), config.getFactoryName());
+    }
 
-        // at most size-1 variables in any given direction should be negated
-        for(int i = 0; i < size; i++) {
+    /**
+     * The key of the compiled rules in the cache. The BDD only depends on
+     * the variant, the variable ordering and the way rules are written
+     */
+    private String cacheKey() {
+        return "board-" + variant.getKey() + "-" + ordering + (reduced ? "-reduced" : "") + "-rules" + RULES_VERSION;
+    }
 
-            // fan out in both diagonals from [c,r] and set the variables to false
-            if(left >= 0 && up >= 0) bdd.andWith(fact.nithVar(convertToVarID(left, up)));
-            if(left >= 0  && down < size) bdd.andWith(fact.nithVar(convertToVarID(left, down)));
-            if(right < size && up >= 0) bdd.andWith(fact.nithVar(convertToVarID(right, up)));
-            if(right < size && down < size) bdd.andWith(fact.nithVar(convertToVarID(right, down)));
+    /**
+     * Returns the variant being played
+     */
+    public BoardVariant getVariant() {
+        return variant;
+    }
 
-            left--;
-            right++;
-            up--;
-            down++;
+    /**
+     * Choose how the rules are combined the next time the board is initialized
+     */
+    public void setScheduler(ConjunctionScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
 
-        }
+    /**
+     * Choose where compiled rules are cached, or null to always build them
+     */
+    public void setCache(BDDCache cache) {
+        this.cache = cache;
+    }
 
-        // either all of the above is true, or [c,r] is false
-        bdd.orWith(fact.nithVar(convertToVarID(c, r)));
-        return bdd;
+    /**
+     * Choose where build times are recorded, or null to not record them
+     */
+    public void setHistory(BuildHistory history) {
+        this.history = history;
     }
 
     /**
-     * Returns the BDD corresponding to if [c,r] then
-     * not all other variables in the same same row, else false
+     * Choose whether the next board compiles only the solutions kept by the
+     * symmetry rules instead of every solution, see SymmetricBoard
      */
-    private BDD horizontalRule(int c, int r) {
-        // set [c,r] to be true
-        BDD bdd = fact.ithVar(convertToVarID(c, r));
+    public void setSymmetryReduced(boolean reduced) {
+        this.reduced = reduced;
+    }
 
-        // set all other in same row to be false
-        for(int i = 0; i < size; i++) {
-            if(i != c) {
-                bdd.andWith(fact.nithVar(convertToVarID(i, r)));
-            }
-        }
+    /**
+     * Choose how cells are numbered the next time the board is initialized
+     */
+    public void setOrdering(VariableOrdering ordering) {
+        this.ordering = ordering;
+    }
 
-        // either all of the above is true or [c,r] is false
-        bdd.orWith(fact.nithVar(convertToVarID(c, r)));
-        return bdd;
+    /**
+     * Returns the number of nodes in the BDD of the current board
+     */
+    public int getNodeCount() {
+        return compiled.nodeCount(bdd);
     }
 
     /**
-     * Returns the BDD corresponding to if [c,r] then
-     * not all other variables in the same column, else false
+     * Returns the time and memory spent building the BDD of the current board
      */
-    private BDD verticalRule(int c, int r) {
-        // set [c,r] to be true
-        BDD bdd = fact.ithVar(convertToVarID(c, r));
+    public BuildStats getBuildStats() {
+        return buildStats;
+    }
 
-        // set all other in same col to be false
-        for(int i = 0; i < size; i++) {
-            if(i != r) {
-                bdd.andWith(fact.nithVar(convertToVarID(c, i)));
-            }
+    /**
+     * Returns the solutions that keep the queens placed so far, one at a time.
+     * Each solution is the set of cells column*size+row holding a queen
+     */
+    public SolutionEnumerator getSolutions() {
+        return compiled.solutions(placed);
+    }
+
+    @Override
+    public BigInteger getSolutionCount() {
+        return counter().count();
+    }
+
+    /**
+     * Returns the number of solutions of the empty board that are not
+     * another solution turned or mirrored
+     */
+    public BigInteger getFundamentalSolutionCount() {
+        return compiled.countFundamentalSolutions(BoardSymmetry.of(variant));
+    }
+
+    @Override
+    public BigInteger[][] getSolutionCounts() {
+        BigInteger[] perCell = counter().countTrue();
+        BigInteger[][] counts = new BigInteger[size][size];
+        for(int c = 0; c < size; c++) {
+            for(int r = 0; r < size; r++) counts[c][r] = perCell[BoardState.cell(c, r, size)];
         }
+        return counts;
+    }
 
-        // either all of the above is true, or [c,r] is false
-        bdd.orWith(fact.nithVar(convertToVarID(c, r)));
-        return bdd;
+    @Override
+    public int[][] getRandomSolution(Random random) {
+        BitSet queens = counter().sample(random);
+        if(queens == null) return null;
+
+        int[][] solution = new int[size][size];
+        for(int c = 0; c < size; c++) {
+            for(int r = 0; r < size; r++) solution[c][r] = queens.get(BoardState.cell(c, r, size)) ? 1 : -1;
+        }
+        return solution;
+    }
+
+    /**
+     * Returns the solution counts of the queens placed now, counting them
+     * again only when the queens have changed
+     */
+    private SolutionCounter counter() {
+        if(counter == null || !placed.equals(counted)) {
+            counter = compiled.countSolutions(placed);
+            counted = placed;
+        }
+        return counter;
     }
 
     @Override
@@ -156,57 +382,121 @@ public class MyLogic implements IQueensLogic {
     public void insertQueen(int column, int row) {
         // only insert if the position if empty
         if(board[column][row] == 0) {
-            // add queen on the board
-            board[column][row] = 1;
+            long start = QueensMetrics.start();
+            QueensEvents.InsertQueen event = new QueensEvents.InsertQueen();
+            event.begin();
+
+            record();
+            placed = (BitSet) placed.clone();
+            placed.set(BoardState.cell(column, row, size));
+            boolean cached = restore(placed);
+            if(!cached) {
+                // add queen on the board
+                board[column][row] = 1;
+
+                // restrict corresponding variable to true
+                int restricted = compiled.place(bdd, column, row);
+                compiled.free(bdd);
+                bdd = restricted;
+                updateBoard();
+                remember();
+            }
 
-            // restrict corresponding variable to true
-            bdd.restrictWith(fact.ithVar(convertToVarID(column, row)));
-            updateBoard();
+            QueensMetrics.time("play.insertQueen", start);
+            QueensMetrics.sampleEngine(compiled.getEngine());
+            event.end();
+            if(event.shouldCommit()) {
+                event.column = column;
+                event.row = row;
+                event.cached = cached;
+                event.nodes = compiled.nodeCount(bdd);
+                event.commit();
+            }
         }
     }
 
+    @Override
+    public void removeQueen(int column, int row) {
+        int cell = BoardState.cell(column, row, size);
+        // only remove queens placed by the user
+        if(placed.get(cell)) {
+            record();
+            placed = (BitSet) placed.clone();
+            placed.clear(cell);
+            moveTo(placed);
+        }
+    }
+
+    @Override
+    public boolean undo() {
+        if(undoStack.isEmpty()) return false;
+        redoStack.push(placed);
+        placed = undoStack.pop();
+        moveTo(placed);
+        return true;
+    }
+
+    @Override
+    public boolean redo() {
+        if(redoStack.isEmpty()) return false;
+        undoStack.push(placed);
+        placed = redoStack.pop();
+        moveTo(placed);
+        return true;
+    }
+
     /**
-     * Convert the board position [c,r] to the corresponding variable
-     * in the BDD
+     * Saves the current queens before a move, which can no longer be redone
      */
-    private int convertToVarID(int column, int row) {
-        return row * size + column;
+    private void record() {
+        undoStack.push(placed);
+        redoStack.clear();
     }
 
     /**
-     * Update the board such that positions that are rendered invalid get's
-     * value -1 and positions where a queen MUST be placed get's a 1
+     * Makes the queens the current ones, from the cache if possible and
+     * else by restricting the rules with all of them at once
      */
-    private void updateBoard() {
-        for(int r = 0; r < size; r++) {
-            for(int c = 0; c < size; c++) {
-                // set an x?
-                if(isPositionInvalid(c, r)) board[c][r] = -1;
-                // set a queen?
-                else if(mustThereBeAQueen(c, r)) board[c][r] = 1;
-            }
-        }
+    private void moveTo(BitSet queens) {
+        long start = QueensMetrics.start();
+        if(restore(queens)) return;
+
+        compiled.free(bdd);
+        bdd = compiled.placeAll(queens);
+        board = compiled.boardOf(queens, bdd);
+        remember();
+        QueensMetrics.time("play.moveTo", start);
     }
 
     /**
-     * Check if adding a queen to [c,r], i.e. restricting variable x[c, r]
-     * to true, will make the bdd unsatisfiable
+     * Makes the cached state of the queens the current one. Returns false
+     * if the queens have no cached state
      */
-    private boolean isPositionInvalid(int col, int row) {
-        // place a queen at [col, row]
-        BDD test = bdd.restrict(fact.ithVar(convertToVarID(col, row)));
-        // does that make the bdd unsatisfiable?
-        return test.isZero();
+    private boolean restore(BitSet queens) {
+        BoardState state = states.get(queens);
+        QueensMetrics.count(state == null ? "states.miss" : "states.hit");
+        if(state == null) return false;
+
+        compiled.free(bdd);
+        bdd = compiled.copy(state.getBDD());
+        board = state.copyBoard();
+        return true;
     }
 
     /**
-     * Check if NOT adding a queen at [c,r], i.e. restricting variable x[c,r]
-     * to false, makes the BDD unsatisfiable
+     * Caches the current state
      */
-    private boolean mustThereBeAQueen(int col, int row) {
-        // do not place a queen at [col, row]
-        BDD test = bdd.restrict(fact.nithVar(convertToVarID(col, row)));
-        // does that make the bdd unsatisfiable?
-        return test.isZero();
+    private void remember() {
+        int[][] copy = new int[size][];
+        for(int c = 0; c < size; c++) copy[c] = board[c].clone();
+        states.put(new BoardState(placed, compiled.copy(bdd), copy));
+    }
+
+    /**
+     * Update the board such that positions that are rendered invalid get's
+     * value -1 and positions where a queen MUST be placed get's a 1
+     */
+    private void updateBoard() {
+        compiled.updateBoard(placed, bdd, board);
     }
 }
@@ -0,0 +1,609 @@
+import java.util.Arrays;
+
+/**
+ * A small BDD package written for the configurator, kept entirely in flat
+ * int arrays so no object is allocated per node or per operation.
+ *
+ * Nodes are found through an open addressing unique table with linear
+ * probing, and operation results are kept in a lossy computed cache where a
+ * new result simply overwrites whatever was in its slot. The variable order
+ * is fixed, the level of a variable is the variable itself.
+ *
+ * Garbage is only collected when an operation starts, never in the middle
+ * of one, so intermediate results need no protection. Nodes that are still
+ * referenced by a handle, or reachable from one, survive. If an operation
+ * runs out of nodes, the table doubles instead. With a node limit set, an
+ * operation that would need a table larger than the limit, or than the heap
+ * has room for, throws a NodeLimitException instead.
+ *
+ * @author Sabina Hult
+ */
+public class NativeBDD implements BDDEngine {
+    private static final int FALSE = 0;
+    private static final int TRUE = 1;
+
+    // operations in the computed cache, ite is keyed by its third operand instead
+    private static final int AND = -1;
+    private static final int OR = -2;
+    private static final int NOT = -3;
+    private static final int RESTRICT = -4;
+
+    // the node table is collected when less than this part of it is free,
+    // and grows if less than twice as much is free afterwards
+    private static final int GC_FREE_DIVISOR = 8;
+    private static final int GROW_FREE_DIVISOR = 4;
+    // bytes of heap per node: six arrays, up to four unique table slots and a cache slot
+    static final int BYTES_PER_NODE = 44;
+
+    private final int varNum;
+
+    // per node: variable (varNum for the terminals, -1 when free), children, references
+    private int[] var;
+    private int[] low;
+    private int[] high;
+    private int[] refs;
+    private int capacity;
+    // largest capacity allowed, 0 for no limit
+    private int nodeLimit;
+    // free nodes are linked through low
+    private int firstFree;
+    private int freeCount;
+
+    // node indices, 0 for an empty slot
+    private int[] unique;
+    private int uniqueMask;
+
+    private int[] cacheA;
+    private int[] cacheB;
+    private int[] cacheC;
+    private int[] cacheResult;
+    private int cacheMask;
+
+    // scratch space for walking the nodes of a BDD
+    private int[] mark;
+    private int epoch;
+    private int[] stack;
+    private int[] index;
+
+    private int collections;
+    private long cacheHits;
+    private long cacheMisses;
+    private EngineMonitor monitor;
+
+    /**
+     * @param varNum the number of variables
+     * @param nodes the initial size of the node table
+     * @param cacheSize the initial size of the computed cache
+     */
+    public NativeBDD(int varNum, int nodes, int cacheSize) {
+        this.varNum = varNum;
+        capacity = Math.max(nodes, 2 * varNum + 16);
+        var = new int[capacity];
+        low = new int[capacity];
+        high = new int[capacity];
+        refs = new int[capacity];
+
+        var[FALSE] = var[TRUE] = varNum;
+        firstFree = -1;
+        for(int n = capacity - 1; n > TRUE; n--) release(n);
+        freeCount = capacity - 2;
+
+        unique = new int[tableSize(capacity)];
+        uniqueMask = unique.length - 1;
+
+        resizeCache(Integer.highestOneBit(Math.max(1024, cacheSize)));
+
+        mark = new int[capacity];
+        stack = new int[capacity];
+    }
+
+    @Override
+    public String getName() {
+        return "native";
+    }
+
+    @Override
+    public int varNum() {
+        return varNum;
+    }
+
+    @Override
+    public int zero() {
+        return FALSE;
+    }
+
+    @Override
+    public int one() {
+        return TRUE;
+    }
+
+    @Override
+    public int ithVar(int v) {
+        checkVar(v);
+        maybeCollect();
+        return ref(mk(v, FALSE, TRUE));
+    }
+
+    @Override
+    public int nithVar(int v) {
+        checkVar(v);
+        maybeCollect();
+        return ref(mk(v, TRUE, FALSE));
+    }
+
+    @Override
+    public int and(int f, int g) {
+        maybeCollect();
+        return ref(and0(f, g));
+    }
+
+    @Override
+    public int or(int f, int g) {
+        maybeCollect();
+        return ref(or0(f, g));
+    }
+
+    @Override
+    public int not(int f) {
+        maybeCollect();
+        return ref(not0(f));
+    }
+
+    @Override
+    public int ite(int f, int g, int h) {
+        maybeCollect();
+        return ref(ite0(f, g, h));
+    }
+
+    @Override
+    public int node(int v, int low, int high) {
+        checkVar(v);
+        if(var[low] <= v || var[high] <= v) return BDDEngine.super.node(v, low, high);
+        maybeCollect();
+        return ref(mk(v, low, high));
+    }
+
+    @Override
+    public int restrict(int f, int cube) {
+        maybeCollect();
+        return ref(restrict0(f, cube));
+    }
+
+    @Override
+    public int copy(int f) {
+        return ref(f);
+    }
+
+    @Override
+    public void free(int f) {
+        if(f > TRUE && refs[f] > 0) refs[f]--;
+    }
+
+    @Override
+    public boolean isZero(int f) {
+        return f == FALSE;
+    }
+
+    @Override
+    public boolean isOne(int f) {
+        return f == TRUE;
+    }
+
+    @Override
+    public double satCount(int f) {
+        // count over a snapshot, so the memory needed follows the size of f
+        return snapshot(f).satCount();
+    }
+
+    @Override
+    public int nodeCount(int f) {
+        int count = 0;
+        int top = start(f);
+        while(top > 0) {
+            int n = stack[--top];
+            count++;
+            top = push(low[n], top);
+            top = push(high[n], top);
+        }
+        return count;
+    }
+
+    @Override
+    public int[] varDomains(int f) {
+        DomainPropagator.Collector collector = new DomainPropagator.Collector(varNum);
+        if(f != FALSE) {
+            collector.root(var[f]);
+            int top = start(f);
+            while(top > 0) {
+                int n = stack[--top];
+                if(high[n] != FALSE) {
+                    collector.high(var[n], var[n], var[high[n]]);
+                    top = push(high[n], top);
+                }
+                if(low[n] != FALSE) {
+                    collector.low(var[n], var[n], var[low[n]]);
+                    top = push(low[n], top);
+                }
+            }
+        }
+        // the level of a variable is the variable
+        return collector.domains(level -> level);
+    }
+
+    @Override
+    public NodeGraph snapshot(int f) {
+        // number the nodes children first
+        int size = nodeCount(f) + 2;
+        int[] nodeVar = new int[size];
+        int[] nodeLow = new int[size];
+        int[] nodeHigh = new int[size];
+        nodeVar[NodeGraph.FALSE] = nodeVar[NodeGraph.TRUE] = -1;
+
+        if(index == null || index.length < capacity) index = new int[capacity];
+        index[FALSE] = NodeGraph.FALSE;
+        index[TRUE] = NodeGraph.TRUE;
+        int next = 2;
+
+        newEpoch();
+        int top = 0;
+        if(f > TRUE) stack[top++] = f;
+        while(top > 0) {
+            int n = stack[top - 1];
+            if(mark[n] == epoch) {
+                top--;
+                continue;
+            }
+            int l = low[n];
+            int h = high[n];
+            if(l > TRUE && mark[l] != epoch) {
+                stack[top++] = l;
+            } else if(h > TRUE && mark[h] != epoch) {
+                stack[top++] = h;
+            } else {
+                top--;
+                mark[n] = epoch;
+                nodeVar[next] = var[n];
+                nodeLow[next] = index[l];
+                nodeHigh[next] = index[h];
+                index[n] = next++;
+            }
+        }
+        return new NodeGraph(varNum, nodeVar, nodeLow, nodeHigh, index[f]);
+    }
+
+    @Override
+    public int level2Var(int level) {
+        return level;
+    }
+
+    @Override
+    public int getNodeNum() {
+        return capacity - 2 - freeCount;
+    }
+
+    @Override
+    public int getNodeTableSize() {
+        return capacity;
+    }
+
+    @Override
+    public void setMonitor(EngineMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    public long[] getCacheHitsAndMisses() {
+        return new long[] {cacheHits, cacheMisses};
+    }
+
+    @Override
+    public void setNodeLimit(int maxNodes) {
+        nodeLimit = maxNodes;
+    }
+
+    /**
+     * Returns the number of garbage collections so far
+     */
+    public int getCollections() {
+        return collections;
+    }
+
+    private int and0(int f, int g) {
+        if(f == g || g == TRUE) return f;
+        if(f == FALSE || g == FALSE) return FALSE;
+        if(f == TRUE) return g;
+        if(f > g) {
+            int t = f;
+            f = g;
+            g = t;
+        }
+
+        int slot = slot(f, g, AND);
+        if(cacheA[slot] == f && cacheB[slot] == g && cacheC[slot] == AND) return hit(slot);
+
+        int v = Math.min(var[f], var[g]);
+        int l = and0(var[f] == v ? low[f] : f, var[g] == v ? low[g] : g);
+        int h = and0(var[f] == v ? high[f] : f, var[g] == v ? high[g] : g);
+        return store(slot, f, g, AND, mk(v, l, h));
+    }
+
+    private int or0(int f, int g) {
+        if(f == g || g == FALSE) return f;
+        if(f == TRUE || g == TRUE) return TRUE;
+        if(f == FALSE) return g;
+        if(f > g) {
+            int t = f;
+            f = g;
+            g = t;
+        }
+
+        int slot = slot(f, g, OR);
+        if(cacheA[slot] == f && cacheB[slot] == g && cacheC[slot] == OR) return hit(slot);
+
+        int v = Math.min(var[f], var[g]);
+        int l = or0(var[f] == v ? low[f] : f, var[g] == v ? low[g] : g);
+        int h = or0(var[f] == v ? high[f] : f, var[g] == v ? high[g] : g);
+        return store(slot, f, g, OR, mk(v, l, h));
+    }
+
+    private int not0(int f) {
+        if(f == FALSE) return TRUE;
+        if(f == TRUE) return FALSE;
+
+        int slot = slot(f, 0, NOT);
+        if(cacheA[slot] == f && cacheC[slot] == NOT) return hit(slot);
+
+        int l = not0(low[f]);
+        int h = not0(high[f]);
+        return store(slot, f, 0, NOT, mk(var[f], l, h));
+    }
+
+    private int ite0(int f, int g, int h) {
+        if(f == TRUE) return g;
+        if(f == FALSE) return h;
+        if(g == h) return g;
+        if(g == TRUE && h == FALSE) return f;
+        if(g == FALSE && h == TRUE) return not0(f);
+
+        int slot = slot(f, g, h);
+        if(cacheA[slot] == f && cacheB[slot] == g && cacheC[slot] == h) return hit(slot);
+
+        int v = Math.min(var[f], Math.min(var[g], var[h]));
+        int l = ite0(var[f] == v ? low[f] : f, var[g] == v ? low[g] : g, var[h] == v ? low[h] : h);
+        int r = ite0(var[f] == v ? high[f] : f, var[g] == v ? high[g] : g, var[h] == v ? high[h] : h);
+        return store(slot, f, g, h, mk(v, l, r));
+    }
+
+    private int restrict0(int f, int cube) {
+        // skip the literals of the cube above the variable of f
+        while(cube > TRUE && var[cube] < var[f]) cube = literalRest(cube);
+        if(f <= TRUE || cube <= TRUE) return f;
+
+        int slot = slot(f, cube, RESTRICT);
+        if(cacheA[slot] == f && cacheB[slot] == cube && cacheC[slot] == RESTRICT) return hit(slot);
+
+        int result;
+        if(var[cube] == var[f]) {
+            int branch = high[cube] == FALSE ? low[f] : high[f];
+            result = restrict0(branch, literalRest(cube));
+        } else {
+            int l = restrict0(low[f], cube);
+            int h = restrict0(high[f], cube);
+            result = mk(var[f], l, h);
+        }
+        return store(slot, f, cube, RESTRICT, result);
+    }
+
+    /**
+     * Returns the rest of a cube below its first literal
+     */
+    private int literalRest(int cube) {
+        return high[cube] == FALSE ? low[cube] : high[cube];
+    }
+
+    /**
+     * Returns the node (v, l, h), creating it if it does not exist
+     */
+    private int mk(int v, int l, int h) {
+        if(l == h) return l;
+
+        int i = hash(v, l, h) & uniqueMask;
+        for(int n = unique[i]; n != 0; n = unique[i]) {
+            if(var[n] == v && low[n] == l && high[n] == h) return n;
+            i = (i + 1) & uniqueMask;
+        }
+
+        if(freeCount == 0) {
+            grow();
+            return mk(v, l, h);
+        }
+
+        int n = firstFree;
+        firstFree = low[n];
+        freeCount--;
+        var[n] = v;
+        low[n] = l;
+        high[n] = h;
+        refs[n] = 0;
+        unique[i] = n;
+        return n;
+    }
+
+    private int ref(int f) {
+        if(f > TRUE) refs[f]++;
+        return f;
+    }
+
+    /**
+     * Puts the node on the free list
+     */
+    private void release(int n) {
+        var[n] = -1;
+        low[n] = firstFree;
+        firstFree = n;
+    }
+
+    private void maybeCollect() {
+        if(freeCount >= capacity / GC_FREE_DIVISOR) return;
+        long start = monitor != null ? System.nanoTime() : 0;
+        collect();
+        if(monitor != null) monitor.collected(System.nanoTime() - start, capacity, freeCount);
+        // at the limit the table is only full when an operation runs out of nodes
+        if(freeCount < capacity / GROW_FREE_DIVISOR && (nodeLimit == 0 || capacity < nodeLimit)) grow();
+    }
+
+    /**
+     * Frees every node that no handle can reach and rebuilds the unique table
+     * from the nodes left. The computed cache is cleared, as the freed nodes
+     * will be reused
+     */
+    private void collect() {
+        collections++;
+        newEpoch();
+        int top = 0;
+        for(int n = 2; n < capacity; n++) {
+            if(refs[n] > 0 && var[n] >= 0) top = push(n, top);
+            while(top > 0) {
+                int m = stack[--top];
+                top = push(low[m], top);
+                top = push(high[m], top);
+            }
+        }
+
+        Arrays.fill(unique, 0);
+        firstFree = -1;
+        freeCount = 0;
+        for(int n = capacity - 1; n > TRUE; n--) {
+            if(var[n] >= 0 && mark[n] == epoch) {
+                insert(n);
+            } else {
+                release(n);
+                freeCount++;
+            }
+        }
+        Arrays.fill(cacheA, -1);
+    }
+
+    /**
+     * Doubles the node table
+     */
+    private void grow() {
+        int old = capacity;
+        int next = nodeLimit > 0 ? Math.min(old * 2, nodeLimit) : old * 2;
+        if(nodeLimit > 0) checkRoom(old, next);
+        capacity = next;
+        var = Arrays.copyOf(var, capacity);
+        low = Arrays.copyOf(low, capacity);
+        high = Arrays.copyOf(high, capacity);
+        refs = Arrays.copyOf(refs, capacity);
+        mark = Arrays.copyOf(mark, capacity);
+        stack = new int[capacity];
+
+        for(int n = capacity - 1; n >= old; n--) release(n);
+        freeCount += capacity - old;
+
+        unique = new int[tableSize(capacity)];
+        uniqueMask = unique.length - 1;
+        for(int n = 2; n < old; n++) {
+            if(var[n] >= 0) insert(n);
+        }
+
+        // keep the cache in proportion to the nodes
+        if(cacheA.length < capacity / GROW_FREE_DIVISOR) resizeCache(cacheA.length * 2);
+        if(monitor != null) monitor.resized(old, capacity);
+    }
+
+    /**
+     * Throws a NodeLimitException if the table cannot grow to next nodes,
+     * because of the limit or because the heap has no room for the copy
+     */
+    private void checkRoom(int old, int next) {
+        if(next <= old) {
+            throw new NodeLimitException("The node table is at its limit of " + nodeLimit + " nodes", old);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory();
+        long needed = (long) next * BYTES_PER_NODE;
+        if(needed > free) {
+            System.gc();
+            free = runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory();
+        }
+        if(needed > free) {
+            throw new NodeLimitException("Growing the node table to " + next + " nodes needs "
+                    + needed / (1 << 20) + " MB, " + free / (1 << 20) + " MB of heap is free", old);
+        }
+    }
+
+    private void insert(int n) {
+        int i = hash(var[n], low[n], high[n]) & uniqueMask;
+        while(unique[i] != 0) i = (i + 1) & uniqueMask;
+        unique[i] = n;
+    }
+
+    private void resizeCache(int size) {
+        cacheA = new int[size];
+        cacheB = new int[size];
+        cacheC = new int[size];
+        cacheResult = new int[size];
+        Arrays.fill(cacheA, -1);
+        cacheMask = size - 1;
+    }
+
+    private int slot(int a, int b, int c) {
+        return hash(a, b, c) & cacheMask;
+    }
+
+    private int hit(int slot) {
+        cacheHits++;
+        return cacheResult[slot];
+    }
+
+    private int store(int slot, int a, int b, int c, int result) {
+        cacheMisses++;
+        // the cache may have been resized by a growing node table
+        if(slot >= cacheA.length) return result;
+        cacheA[slot] = a;
+        cacheB[slot] = b;
+        cacheC[slot] = c;
+        cacheResult[slot] = result;
+        return result;
+    }
+
+    /**
+     * Starts a walk over the nodes of f, returning the height of the stack
+     */
+    private int start(int f) {
+        newEpoch();
+        return push(f, 0);
+    }
+
+    /**
+     * Pushes a node that is not a terminal and has not been seen in this walk
+     */
+    private int push(int n, int top) {
+        if(n <= TRUE || mark[n] == epoch) return top;
+        mark[n] = epoch;
+        stack[top] = n;
+        return top + 1;
+    }
+
+    private void newEpoch() {
+        if(++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(mark, 0);
+            epoch = 1;
+        }
+    }
+
+    private void checkVar(int v) {
+        if(v < 0 || v >= varNum) throw new IllegalArgumentException("Unknown variable " + v);
+    }
+
+    private static int hash(int a, int b, int c) {
+        int h = a * 0x9E3779B1 + b * 0x85EBCA77 + c * 0xC2B2AE3D;
+        return h ^ (h >>> 15);
+    }
+
+    private static int tableSize(int nodes) {
+        return Integer.highestOneBit(nodes) << 2;
+    }
+}
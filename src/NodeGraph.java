@@ -0,0 +1,204 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.sf.javabdd.BDD;
+
+/**
+ * A snapshot of the nodes of a BDD in flat arrays, independent of the factory
+ * it was taken from.
+ *
+ * Node 0 is False and node 1 is True. The remaining nodes are stored children
+ * before parents and refer to their children by index. The root is the last
+ * node, unless the BDD is a terminal.
+ *
+ * @author Sabina Hult
+ */
+public class NodeGraph {
+    public static final int FALSE = 0;
+    public static final int TRUE = 1;
+
+    private final int varNum;
+    private final int[] var;
+    private final int[] low;
+    private final int[] high;
+    private final int root;
+
+    public NodeGraph(int varNum, int[] var, int[] low, int[] high, int root) {
+        this.varNum = varNum;
+        this.var = var;
+        this.low = low;
+        this.high = high;
+        this.root = root;
+    }
+
+    /**
+     * Takes a snapshot of the bdd, visiting each node once
+     */
+    public static NodeGraph of(BDD bdd) {
+        Builder builder = new Builder(bdd.getFactory().varNum());
+        int root = builder.add(bdd.id());
+        builder.free();
+        return new NodeGraph(builder.varNum, trim(builder.var, builder.size),
+                trim(builder.low, builder.size), trim(builder.high, builder.size), root);
+    }
+
+    /**
+     * Builds the BDD in the given engine, which must have at least as many
+     * variables as the snapshot, and returns its handle
+     */
+    public int toBDD(BDDEngine engine) {
+        return toBDD(engine, null);
+    }
+
+    /**
+     * Builds the BDD with every variable v renamed to rename[v] in the given
+     * engine and returns its handle. The renamed variables need not keep
+     * their order, at the price of more work in the engine
+     */
+    public int toBDD(BDDEngine engine, int[] rename) {
+        int[] nodes = new int[size()];
+        nodes[FALSE] = engine.zero();
+        nodes[TRUE] = engine.one();
+
+        for(int i = 2; i < nodes.length; i++) {
+            int v = engine.ithVar(rename == null ? var[i] : rename[var[i]]);
+            nodes[i] = engine.ite(v, nodes[high[i]], nodes[low[i]]);
+            engine.free(v);
+        }
+
+        int root = engine.copy(nodes[root()]);
+        for(int node : nodes) engine.free(node);
+        return root;
+    }
+
+    /**
+     * Returns true if the snapshots have the same nodes in the same order,
+     * which for two snapshots taken in the same variable order means they
+     * are the same function
+     */
+    public boolean sameNodes(NodeGraph other) {
+        return root == other.root && Arrays.equals(var, other.var)
+                && Arrays.equals(low, other.low) && Arrays.equals(high, other.high);
+    }
+
+    /**
+     * Number of nodes including the two terminals
+     */
+    public int size() {
+        return var.length;
+    }
+
+    public int root() {
+        return root;
+    }
+
+    public int varNum() {
+        return varNum;
+    }
+
+    /**
+     * The variable tested by the node, or -1 for the terminals
+     */
+    public int var(int node) {
+        return var[node];
+    }
+
+    public int low(int node) {
+        return low[node];
+    }
+
+    public int high(int node) {
+        return high[node];
+    }
+
+    public boolean isTerminal(int node) {
+        return node <= TRUE;
+    }
+
+    /**
+     * Returns the number of satisfying assignments of all the variables,
+     * for a BDD whose variable i is at level i
+     */
+    public double satCount() {
+        double[] counts = new double[size()];
+        counts[TRUE] = 1;
+        for(int n = 2; n < counts.length; n++) {
+            counts[n] = counts[low[n]] * Math.pow(2, level(low[n]) - var[n] - 1)
+                    + counts[high[n]] * Math.pow(2, level(high[n]) - var[n] - 1);
+        }
+        return counts[root] * Math.pow(2, level(root));
+    }
+
+    private int level(int node) {
+        return isTerminal(node) ? varNum : var[node];
+    }
+
+    private static int[] trim(int[] array, int size) {
+        int[] trimmed = new int[size];
+        System.arraycopy(array, 0, trimmed, 0, size);
+        return trimmed;
+    }
+
+    /**
+     * Collects the nodes of a BDD in post order
+     */
+    private static class Builder {
+        final int varNum;
+        final Map<BDD, Integer> index = new HashMap<>();
+        int[] var = new int[16];
+        int[] low = new int[16];
+        int[] high = new int[16];
+        int size = 2;
+
+        Builder(int varNum) {
+            this.varNum = varNum;
+            var[FALSE] = var[TRUE] = -1;
+        }
+
+        /**
+         * Returns the index of the node, adding it and its children first
+         * if they have not been seen before. Consumes the node
+         */
+        int add(BDD node) {
+            if(node.isZero()) {
+                node.free();
+                return FALSE;
+            }
+            if(node.isOne()) {
+                node.free();
+                return TRUE;
+            }
+
+            Integer known = index.get(node);
+            if(known != null) {
+                node.free();
+                return known;
+            }
+
+            int l = add(node.low());
+            int h = add(node.high());
+
+            if(size == var.length) {
+                var = grow(var);
+                low = grow(low);
+                high = grow(high);
+            }
+            var[size] = node.var();
+            low[size] = l;
+            high[size] = h;
+            index.put(node, size);
+            return size++;
+        }
+
+        void free() {
+            for(BDD node : index.keySet()) node.free();
+        }
+
+        private static int[] grow(int[] array) {
+            int[] grown = new int[array.length * 2];
+            System.arraycopy(array, 0, grown, 0, array.length);
+            return grown;
+        }
+    }
+}
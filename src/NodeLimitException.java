@@ -0,0 +1,24 @@
+/**
+ * Thrown by a BDDEngine whose node table would have to grow past its limit,
+ * or past the memory left, to finish an operation. The engine may hold
+ * half built results afterwards and is best thrown away.
+ *
+ * @author Sabina Hult
+ */
+public class NodeLimitException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int nodes;
+
+    public NodeLimitException(String message, int nodes) {
+        super(message);
+        this.nodes = nodes;
+    }
+
+    /**
+     * Returns the size of the node table that was not enough
+     */
+    public int getNodes() {
+        return nodes;
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Builds the n-queens BDD with every variable ordering and prints the
+ * resulting node count, peak number of live nodes and build time.
+ * Dynamic reordering during the build can be switched on with
+ * -Dqueens.reorder=sift.
+ *
+ * Usage: java OrderingReport [from] [to]  (board sizes, defaults 8 and 14)
+ *
+ * @author Sabina Hult
+ */
+public class OrderingReport {
+
+    public static void main(String[] args) {
+        int from = args.length >= 1 ? Integer.parseInt(args[0]) : 8;
+        int to = args.length >= 2 ? Integer.parseInt(args[1]) : 14;
+        String reorder = System.getProperty(FactoryConfig.REORDER_PROPERTY, "none");
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%4s %-14s %-8s %10s %12s %10s%n",
+                "n", "ordering", "reorder", "nodes", "peak nodes", "ms"));
+
+        for(int n = from; n <= to; n++) {
+            for(VariableOrdering ordering : VariableOrdering.values()) {
+                MyLogic logic = new MyLogic();
+                logic.setOrdering(ordering);
+                // measure the builds, not the cache
+                logic.setCache(null);
+                logic.initializeBoard(n);
+
+                BuildStats stats = logic.getBuildStats();
+                report.append(String.format("%4d %-14s %-8s %10d %12d %10d%n",
+                        n, ordering, reorder, logic.getNodeCount(), stats.getPeakNodes(), stats.getMillis()));
+            }
+        }
+
+        System.out.println();
+        System.out.print(report);
+    }
+}
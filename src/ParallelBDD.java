@@ -0,0 +1,518 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A BDD engine for building BDDs on many threads at once. and and or split
+ * their recursion into fork/join tasks near the top, and every operation
+ * can be called from any thread.
+ *
+ * The unique table is striped: a node hashes to one of many segments, each
+ * an open addressing table of its own behind its own lock. The computed cache
+ * is lossy and lock free, every slot is guarded by a stamp that is odd while
+ * the slot is written, so a reader never sees half an entry.
+ *
+ * Nodes are never freed, handles need not be freed either. The engine is
+ * meant for building a BDD that is then copied into a NativeBDD or JavaBDD
+ * engine through a snapshot.
+ *
+ * @author Sabina Hult
+ */
+public class ParallelBDD implements BDDEngine {
+    private static final int FALSE = 0;
+    private static final int TRUE = 1;
+
+    private static final int AND = 1;
+    private static final int OR = 2;
+    private static final int NOT = 3;
+    private static final int RESTRICT = 4;
+
+    // nodes are stored in pages, so the table can grow while it is being read
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int MAX_PAGES = 1 << (31 - PAGE_BITS);
+    // nodes handed to a segment at a time
+    private static final int CHUNK = 1024;
+    private static final int SEGMENT_BITS = 8;
+
+    private static final VarHandle STAMP = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final int varNum;
+    private final ForkJoinPool pool;
+    // recursion depth down to which and and or fork
+    private final int forkDepth;
+
+    // a page is published with one release write, so a thread that sees it sees both its arrays
+    private final AtomicReferenceArray<Page> pages = new AtomicReferenceArray<>(MAX_PAGES);
+    private final AtomicInteger nextNode = new AtomicInteger(PAGE_SIZE);
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    private final int[] cacheStamp;
+    private final int[] cacheA;
+    private final int[] cacheB;
+    private final int[] cacheOp;
+    private final int[] cacheResult;
+    private final int cacheMask;
+
+    /**
+     * @param varNum the number of variables
+     * @param cacheSize the size of the computed cache
+     * @param threads the number of threads used by and and or
+     */
+    public ParallelBDD(int varNum, int cacheSize, int threads) {
+        this.varNum = varNum;
+        this.pool = new ForkJoinPool(threads);
+        this.forkDepth = 32 - Integer.numberOfLeadingZeros(threads) + 3;
+
+        // the terminals live in the first page, which is not handed out
+        Page terminals = new Page();
+        terminals.var[FALSE] = terminals.var[TRUE] = varNum;
+        pages.set(0, terminals);
+        for(int i = 0; i < segments.length; i++) segments[i] = new Segment();
+
+        int size = Integer.highestOneBit(Math.max(1024, cacheSize));
+        cacheStamp = new int[size];
+        cacheA = new int[size];
+        cacheB = new int[size];
+        cacheOp = new int[size];
+        cacheResult = new int[size];
+        cacheMask = size - 1;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Stops the threads of the engine
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Conjoins all the operands in a balanced tree of neighbouring operands,
+     * like ConjunctionScheduler.BALANCED_TREE, with the two halves of every
+     * subtree conjoined on different threads. Every conjunction is reported
+     * to the stats
+     */
+    public int conjoin(int[][] rows, BuildStats stats) {
+        int count = 0;
+        for(int[] row : rows) count += row.length;
+        int[] operands = new int[count];
+        int i = 0;
+        for(int[] row : rows) {
+            for(int operand : row) operands[i++] = operand;
+        }
+        return pool.invoke(ForkJoinTask.adapt(() -> conjoin(operands, 0, operands.length, stats)));
+    }
+
+    private int conjoin(int[] operands, int from, int to, BuildStats stats) {
+        if(to - from == 1) return operands[from];
+
+        int middle = (from + to) >>> 1;
+        ForkJoinTask<Integer> first = ForkJoinTask.adapt(() -> conjoin(operands, from, middle, stats)).fork();
+        int second = conjoin(operands, middle, to, stats);
+        int result = and0(first.join(), second, 0);
+        stats.conjoined(result);
+        return result;
+    }
+
+    @Override
+    public String getName() {
+        return "parallel(" + pool.getParallelism() + ")";
+    }
+
+    @Override
+    public int varNum() {
+        return varNum;
+    }
+
+    @Override
+    public int zero() {
+        return FALSE;
+    }
+
+    @Override
+    public int one() {
+        return TRUE;
+    }
+
+    @Override
+    public int ithVar(int v) {
+        return mk(v, FALSE, TRUE);
+    }
+
+    @Override
+    public int nithVar(int v) {
+        return mk(v, TRUE, FALSE);
+    }
+
+    @Override
+    public int and(int f, int g) {
+        if(ForkJoinTask.inForkJoinPool()) return and0(f, g, 0);
+        return pool.invoke(new Apply(AND, f, g, 0));
+    }
+
+    @Override
+    public int or(int f, int g) {
+        if(ForkJoinTask.inForkJoinPool()) return or0(f, g, 0);
+        return pool.invoke(new Apply(OR, f, g, 0));
+    }
+
+    @Override
+    public int not(int f) {
+        if(f == FALSE) return TRUE;
+        if(f == TRUE) return FALSE;
+
+        int slot = slot(f, 0, NOT);
+        int cached = lookup(slot, f, 0, NOT);
+        if(cached >= 0) return cached;
+
+        return store(slot, f, 0, NOT, mk(var(f), not(low(f)), not(high(f))));
+    }
+
+    @Override
+    public int ite(int f, int g, int h) {
+        int then = and(f, g);
+        int otherwise = and(not(f), h);
+        return or(then, otherwise);
+    }
+
+    @Override
+    public int node(int v, int low, int high) {
+        if(var(low) <= v || var(high) <= v) return BDDEngine.super.node(v, low, high);
+        return mk(v, low, high);
+    }
+
+    @Override
+    public int restrict(int f, int cube) {
+        // skip the literals of the cube above the variable of f
+        while(cube > TRUE && var(cube) < var(f)) cube = literalRest(cube);
+        if(f <= TRUE || cube <= TRUE) return f;
+
+        int slot = slot(f, cube, RESTRICT);
+        int cached = lookup(slot, f, cube, RESTRICT);
+        if(cached >= 0) return cached;
+
+        int result;
+        if(var(cube) == var(f)) {
+            result = restrict(high(cube) == FALSE ? low(f) : high(f), literalRest(cube));
+        } else {
+            result = mk(var(f), restrict(low(f), cube), restrict(high(f), cube));
+        }
+        return store(slot, f, cube, RESTRICT, result);
+    }
+
+    @Override
+    public int copy(int f) {
+        return f;
+    }
+
+    @Override
+    public void free(int f) {
+        // nodes are never freed
+    }
+
+    @Override
+    public boolean isZero(int f) {
+        return f == FALSE;
+    }
+
+    @Override
+    public boolean isOne(int f) {
+        return f == TRUE;
+    }
+
+    @Override
+    public double satCount(int f) {
+        return snapshot(f).satCount();
+    }
+
+    @Override
+    public int nodeCount(int f) {
+        return snapshot(f).size() - 2;
+    }
+
+    @Override
+    public int[] varDomains(int f) {
+        return DomainPropagator.propagate(snapshot(f));
+    }
+
+    @Override
+    public NodeGraph snapshot(int f) {
+        int[] index = new int[nextNode.get()];
+        int[] size = {2};
+        int root = number(f, index, size);
+
+        int[] nodeVar = new int[size[0]];
+        int[] nodeLow = new int[size[0]];
+        int[] nodeHigh = new int[size[0]];
+        nodeVar[NodeGraph.FALSE] = nodeVar[NodeGraph.TRUE] = -1;
+        fill(f, index, nodeVar, nodeLow, nodeHigh, new boolean[size[0]]);
+        return new NodeGraph(varNum, nodeVar, nodeLow, nodeHigh, root);
+    }
+
+    @Override
+    public int level2Var(int level) {
+        return level;
+    }
+
+    @Override
+    public int getNodeNum() {
+        // read without locking, so only exact when no operation is running
+        int nodes = 0;
+        for(Segment segment : segments) nodes += segment.count;
+        return nodes;
+    }
+
+    @Override
+    public int getNodeTableSize() {
+        return nextNode.get() - PAGE_SIZE;
+    }
+
+    private int and0(int f, int g, int depth) {
+        if(f == g || g == TRUE) return f;
+        if(f == FALSE || g == FALSE) return FALSE;
+        if(f == TRUE) return g;
+        if(f > g) {
+            int t = f;
+            f = g;
+            g = t;
+        }
+        return apply(AND, f, g, depth);
+    }
+
+    private int or0(int f, int g, int depth) {
+        if(f == g || g == FALSE) return f;
+        if(f == TRUE || g == TRUE) return TRUE;
+        if(f == FALSE) return g;
+        if(f > g) {
+            int t = f;
+            f = g;
+            g = t;
+        }
+        return apply(OR, f, g, depth);
+    }
+
+    /**
+     * The recursive step of and and or on two nodes that are not terminals.
+     * Near the top the low branch goes to another thread
+     */
+    private int apply(int op, int f, int g, int depth) {
+        int slot = slot(f, g, op);
+        int cached = lookup(slot, f, g, op);
+        if(cached >= 0) return cached;
+
+        int vf = var(f);
+        int vg = var(g);
+        int v = Math.min(vf, vg);
+        int fl = vf == v ? low(f) : f;
+        int fh = vf == v ? high(f) : f;
+        int gl = vg == v ? low(g) : g;
+        int gh = vg == v ? high(g) : g;
+
+        int l;
+        int h;
+        if(depth < forkDepth) {
+            Apply task = new Apply(op, fl, gl, depth + 1);
+            task.fork();
+            h = op == AND ? and0(fh, gh, depth + 1) : or0(fh, gh, depth + 1);
+            l = task.join();
+        } else {
+            l = op == AND ? and0(fl, gl, depth + 1) : or0(fl, gl, depth + 1);
+            h = op == AND ? and0(fh, gh, depth + 1) : or0(fh, gh, depth + 1);
+        }
+        return store(slot, f, g, op, mk(v, l, h));
+    }
+
+    /**
+     * Returns the node (v, l, h), creating it if it does not exist
+     */
+    private int mk(int v, int l, int h) {
+        if(l == h) return l;
+
+        long children = ((long) l << 32) | (h & 0xffffffffL);
+        int hash = hash(v, l, h);
+        Segment segment = segments[hash >>> (32 - SEGMENT_BITS)];
+        synchronized(segment) {
+            // the table holds the node and its hash side by side, so most
+            // mismatches are found without reading the node
+            int[] table = segment.table;
+            int mask = table.length / 2 - 1;
+            int i = hash & mask;
+            for(int n = table[2 * i]; n != 0; n = table[2 * i]) {
+                if(table[2 * i + 1] == hash && var(n) == v && children(n) == children) return n;
+                i = (i + 1) & mask;
+            }
+
+            int n = segment.allocate();
+            Page page = pages.getAcquire(n >>> PAGE_BITS);
+            page.var[n & PAGE_MASK] = v;
+            page.children[n & PAGE_MASK] = children;
+            table[2 * i] = n;
+            table[2 * i + 1] = hash;
+            if(++segment.count * 4 > table.length) segment.rehash();
+            return n;
+        }
+    }
+
+    private int var(int n) {
+        return pages.getAcquire(n >>> PAGE_BITS).var[n & PAGE_MASK];
+    }
+
+    private long children(int n) {
+        return pages.getAcquire(n >>> PAGE_BITS).children[n & PAGE_MASK];
+    }
+
+    private int low(int n) {
+        return (int) (children(n) >>> 32);
+    }
+
+    private int high(int n) {
+        return (int) children(n);
+    }
+
+    private int literalRest(int cube) {
+        return high(cube) == FALSE ? low(cube) : high(cube);
+    }
+
+    /**
+     * Hands out a new chunk of node indices, adding pages as needed
+     */
+    private int newChunk() {
+        int start = nextNode.getAndAdd(CHUNK);
+        if(start < 0 || start + CHUNK < 0) throw new OutOfMemoryError("ParallelBDD node table is full");
+        int page = start >>> PAGE_BITS;
+        if(pages.getAcquire(page) == null) {
+            synchronized(pages) {
+                if(pages.getAcquire(page) == null) pages.setRelease(page, new Page());
+            }
+        }
+        return start;
+    }
+
+    private int lookup(int slot, int a, int b, int op) {
+        int stamp = (int) STAMP.getAcquire(cacheStamp, slot);
+        if((stamp & 1) != 0) return -1;
+        int result = cacheResult[slot];
+        boolean hit = cacheA[slot] == a && cacheB[slot] == b && cacheOp[slot] == op;
+        VarHandle.acquireFence();
+        if(!hit || (int) STAMP.getOpaque(cacheStamp, slot) != stamp) return -1;
+        return result;
+    }
+
+    private int store(int slot, int a, int b, int op, int result) {
+        int stamp = (int) STAMP.getOpaque(cacheStamp, slot);
+        // someone else is writing the slot, the cache is lossy anyway
+        if((stamp & 1) != 0 || !STAMP.compareAndSet(cacheStamp, slot, stamp, stamp + 1)) return result;
+        cacheA[slot] = a;
+        cacheB[slot] = b;
+        cacheOp[slot] = op;
+        cacheResult[slot] = result;
+        STAMP.setRelease(cacheStamp, slot, stamp + 2);
+        return result;
+    }
+
+    private int slot(int a, int b, int op) {
+        return hash(a, b, op) & cacheMask;
+    }
+
+    /**
+     * Numbers the nodes below n children first, returning the number of n
+     */
+    private int number(int n, int[] index, int[] size) {
+        if(n <= TRUE) return n;
+        if(index[n] != 0) return index[n];
+        number(low(n), index, size);
+        number(high(n), index, size);
+        return index[n] = size[0]++;
+    }
+
+    private void fill(int n, int[] index, int[] nodeVar, int[] nodeLow, int[] nodeHigh, boolean[] done) {
+        if(n <= TRUE || done[index[n]]) return;
+        int i = index[n];
+        done[i] = true;
+        nodeVar[i] = var(n);
+        nodeLow[i] = low(n) <= TRUE ? low(n) : index[low(n)];
+        nodeHigh[i] = high(n) <= TRUE ? high(n) : index[high(n)];
+        fill(low(n), index, nodeVar, nodeLow, nodeHigh, done);
+        fill(high(n), index, nodeVar, nodeLow, nodeHigh, done);
+    }
+
+    private static int hash(int a, int b, int c) {
+        int h = a * 0x9E3779B1 + b * 0x85EBCA77 + c * 0xC2B2AE3D;
+        return h ^ (h >>> 15);
+    }
+
+    /**
+     * and or or of two operands as a task of its own
+     */
+    private class Apply extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final int op;
+        private final int f;
+        private final int g;
+        private final int depth;
+
+        Apply(int op, int f, int g, int depth) {
+            this.op = op;
+            this.f = f;
+            this.g = g;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Integer compute() {
+            return op == AND ? and0(f, g, depth) : or0(f, g, depth);
+        }
+    }
+
+    /**
+     * The variables and children of PAGE_SIZE nodes
+     */
+    private static class Page {
+        final int[] var = new int[PAGE_SIZE];
+        // low child in the upper half, high child in the lower half
+        final long[] children = new long[PAGE_SIZE];
+    }
+
+    /**
+     * One stripe of the unique table
+     */
+    private class Segment {
+        // node and hash of each entry
+        int[] table = new int[2 * 256];
+        int count;
+        int chunkNext;
+        int chunkEnd;
+
+        int allocate() {
+            if(chunkNext == chunkEnd) {
+                chunkNext = newChunk();
+                chunkEnd = chunkNext + CHUNK;
+            }
+            return chunkNext++;
+        }
+
+        void rehash() {
+            int[] old = table;
+            table = new int[old.length * 2];
+            int mask = table.length / 2 - 1;
+            for(int j = 0; j < old.length; j += 2) {
+                if(old[j] == 0) continue;
+                int i = old[j + 1] & mask;
+                while(table[2 * i] != 0) i = (i + 1) & mask;
+                table[2 * i] = old[j];
+                table[2 * i + 1] = old[j + 1];
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Builds the n-queens BDD on 1, 2, ... threads and prints the build time
+ * and speedup of each thread count over the build on one thread, checking
+ * that every parallel build gives exactly the same BDD as the serial one.
+ * The engine the rules end up in is chosen with -Dqueens.factory as usual.
+ *
+ * Usage: java ParallelReport [from] [to] [threads]  (board sizes, defaults
+ * 8 and 11, and the largest thread count, default the number of processors)
+ *
+ * @author Sabina Hult
+ */
+public class ParallelReport {
+
+    public static void main(String[] args) {
+        int from = args.length >= 1 ? Integer.parseInt(args[0]) : 8;
+        int to = args.length >= 2 ? Integer.parseInt(args[1]) : 11;
+        int maxThreads = args.length >= 3 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%d processors%n", Runtime.getRuntime().availableProcessors()));
+        report.append(String.format("%4s %8s %10s %10s %12s %10s%n",
+                "n", "threads", "nodes", "ms", "speedup", "same BDD"));
+
+        for(int n = from; n <= to; n++) {
+            NodeGraph serial = null;
+            long serialMillis = 0;
+            for(int threads = 1; threads <= maxThreads; threads++) {
+                System.setProperty(FactoryConfig.THREADS_PROPERTY, Integer.toString(threads));
+                MyLogic logic = new MyLogic();
+                // measure the builds, not the cache
+                logic.setCache(null);
+                CompiledBoard compiled = logic.compile(n);
+                NodeGraph rules = compiled.snapshotRules();
+                long millis = logic.getBuildStats().getMillis();
+
+                if(serial == null) {
+                    serial = rules;
+                    serialMillis = millis;
+                }
+                report.append(String.format("%4d %8d %10d %10d %12.2f %10s%n", n, threads, rules.size() - 2,
+                        millis, (double) serialMillis / Math.max(1, millis), serial.sameNodes(rules)));
+            }
+        }
+        System.clearProperty(FactoryConfig.THREADS_PROPERTY);
+
+        System.out.println();
+        System.out.print(report);
+    }
+}
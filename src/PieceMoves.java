@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The moves of a piece, written in a small part of Betza's notation for
+ * fairy chess pieces. A piece is a list of atoms, each a leap and its
+ * mirror images:
+ *
+ *  W (1,0)  F (1,1)  D (2,0)  N (2,1)  A (2,2)
+ *  H (3,0)  C (3,1)  Z (3,2)  G (3,3)
+ *
+ * An atom written twice rides, repeating its leap any number of times in
+ * a line, so WW is the rook and NN the nightrider. K, R, B and Q are short
+ * for WF, WW, FF and WWFF. The queen is Q, the amazon QN and the king K.
+ *
+ * Attacks are symmetric, so only one of each pair of opposite leaps and
+ * directions is kept.
+ *
+ * @author Sabina Hult
+ */
+public class PieceMoves {
+    private static final String ATOMS = "WFDNAHCZG";
+    private static final int[][] ATOM_LEAPS = {
+        {1, 0}, {1, 1}, {2, 0}, {2, 1}, {2, 2}, {3, 0}, {3, 1}, {3, 2}, {3, 3}
+    };
+
+    private final String notation;
+    private final List<int[]> leaps = new ArrayList<>();
+    private final List<int[]> rides = new ArrayList<>();
+
+    private PieceMoves(String notation) {
+        this.notation = notation;
+    }
+
+    /**
+     * Returns the moves written in the notation, e.g. Q, QN or K
+     */
+    public static PieceMoves parse(String notation) {
+        String atoms = notation.trim().toUpperCase()
+                .replace("K", "WF").replace("Q", "WWFF").replace("R", "WW").replace("B", "FF");
+        if(atoms.isEmpty()) throw new IllegalArgumentException("A piece needs at least one move");
+
+        PieceMoves moves = new PieceMoves(notation.trim().toUpperCase());
+        for(int i = 0; i < atoms.length(); i++) {
+            int atom = ATOMS.indexOf(atoms.charAt(i));
+            if(atom < 0) throw new IllegalArgumentException("Unknown move " + atoms.charAt(i) + " in " + notation);
+
+            boolean ride = i + 1 < atoms.length() && atoms.charAt(i + 1) == atoms.charAt(i);
+            if(ride) i++;
+            for(int[] offset : halfOfMirrorImages(ATOM_LEAPS[atom])) {
+                moves.add(ride ? moves.rides : moves.leaps, offset);
+            }
+        }
+        // a leap is also the first step of a ride along it
+        moves.leaps.removeIf(leap -> contains(moves.rides, leap));
+        return moves;
+    }
+
+    /**
+     * Returns the leaps of the piece, one of every pair of opposite leaps
+     */
+    public List<int[]> getLeaps() {
+        return leaps;
+    }
+
+    /**
+     * Returns the steps the piece rides along, one of every pair of opposite steps
+     */
+    public List<int[]> getRides() {
+        return rides;
+    }
+
+    /**
+     * Returns the notation with K, R, B and Q written out, so pieces moving
+     * the same way get the same string
+     */
+    public String canonical() {
+        StringBuilder canonical = new StringBuilder();
+        for(int atom = 0; atom < ATOM_LEAPS.length; atom++) {
+            int[] leap = ATOM_LEAPS[atom];
+            if(contains(rides, leap)) canonical.append(ATOMS.charAt(atom)).append(ATOMS.charAt(atom));
+            else if(contains(leaps, leap)) canonical.append(ATOMS.charAt(atom));
+        }
+        return canonical.toString();
+    }
+
+    @Override
+    public String toString() {
+        return notation;
+    }
+
+    private void add(List<int[]> list, int[] offset) {
+        if(!contains(list, offset)) list.add(offset);
+    }
+
+    private static boolean contains(List<int[]> list, int[] offset) {
+        for(int[] o : list) {
+            if(o[0] == offset[0] && o[1] == offset[1]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the mirror images of the leap (dx, dy) with dx > 0, or dx = 0 and dy > 0
+     */
+    private static List<int[]> halfOfMirrorImages(int[] leap) {
+        List<int[]> images = new ArrayList<>();
+        for(int[] image : new int[][] {
+                {leap[0], leap[1]}, {leap[1], leap[0]}, {leap[0], -leap[1]}, {leap[1], -leap[0]},
+                {-leap[0], leap[1]}, {-leap[1], leap[0]}, {-leap[0], -leap[1]}, {-leap[1], -leap[0]}}) {
+            boolean positive = image[0] > 0 || (image[0] == 0 && image[1] > 0);
+            if(positive && !contains(images, image)) images.add(image);
+        }
+        return images;
+    }
+}
@@ -0,0 +1,120 @@
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+
+/**
+ * Plays boards from the response tables compiled by ResponseTable, so every
+ * move is one lookup and no BDD is built or restricted. A set of queens
+ * missing from the table, or a board without a table, is answered by the
+ * rules compiled by a MyLogic, which are only built when first needed.
+ *
+ * @author Sabina Hult
+ */
+public class PrecomputedLogic implements IUndoableQueensLogic {
+    private int size;
+    private BoardVariant variant;
+    // possible values: 0 (empty), 1 (queen), -1 (no queen allowed)
+    private int[][] board;
+
+    // the queens placed by the user, cell column*size+row
+    private BitSet placed;
+    private Deque<BitSet> undoStack;
+    private Deque<BitSet> redoStack;
+
+    private ResponseTable table;
+    // the rules of the variant, compiled for the sets of queens not in the table
+    private CompiledBoard compiled;
+
+    @Override
+    public void initializeBoard(int size) {
+        BoardVariant variant = BoardVariant.fromProperty(size);
+        if(this.variant == null || !variant.getKey().equals(this.variant.getKey())) {
+            table = ResponseTable.fromProperty(variant);
+            if(table == null) System.err.println("No response table for " + variant.getKey() + ", using MyLogic");
+            compiled = null;
+        }
+        this.variant = variant;
+        this.size = size;
+
+        placed = new BitSet();
+        undoStack = new ArrayDeque<>();
+        redoStack = new ArrayDeque<>();
+        moveTo(placed);
+    }
+
+    /**
+     * Returns the table the board is played from, or null if there is none
+     */
+    public ResponseTable getTable() {
+        return table;
+    }
+
+    @Override
+    public int[][] getBoard() {
+        return board;
+    }
+
+    @Override
+    public void insertQueen(int column, int row) {
+        // only insert if the position is empty
+        if(board[column][row] != 0) return;
+        long start = QueensMetrics.start();
+        record();
+        placed = (BitSet) placed.clone();
+        placed.set(BoardState.cell(column, row, size));
+        moveTo(placed);
+        QueensMetrics.time("play.insertQueen", start);
+    }
+
+    @Override
+    public void removeQueen(int column, int row) {
+        int cell = BoardState.cell(column, row, size);
+        // only remove queens placed by the user
+        if(!placed.get(cell)) return;
+        record();
+        placed = (BitSet) placed.clone();
+        placed.clear(cell);
+        moveTo(placed);
+    }
+
+    @Override
+    public boolean undo() {
+        if(undoStack.isEmpty()) return false;
+        redoStack.push(placed);
+        placed = undoStack.pop();
+        moveTo(placed);
+        return true;
+    }
+
+    @Override
+    public boolean redo() {
+        if(redoStack.isEmpty()) return false;
+        undoStack.push(placed);
+        placed = redoStack.pop();
+        moveTo(placed);
+        return true;
+    }
+
+    /**
+     * Saves the current queens before a move, which can no longer be redone
+     */
+    private void record() {
+        undoStack.push(placed);
+        redoStack.clear();
+    }
+
+    /**
+     * Shows the board of the queens, from the table if it holds them and
+     * else from the rules
+     */
+    private void moveTo(BitSet queens) {
+        board = table == null ? null : table.lookup(queens);
+        QueensMetrics.count(board == null ? "table.miss" : "table.hit");
+        if(board != null) return;
+
+        if(compiled == null) compiled = new MyLogic().compile(variant);
+        int bdd = compiled.placeAll(queens);
+        board = compiled.boardOf(queens, bdd);
+        compiled.free(bdd);
+    }
+}
@@ -64,17 +64,24 @@ public class Queens {
            	System.exit(1);
         }
 
-		//Initializing the logic
-		logic.initializeBoard(size);
+		//Initializing the logic, a board too large for the node budget (queens.budget) fails here
+		try {
+			logic.initializeBoard(size);
+		} catch(NodeLimitException nle) {
+			printHelp(nle.getMessage());
+			System.exit(1);
+		}
 
 		try {
 			// Setup of the frame containing the game
 			QueensGUI g = new QueensGUI(logic);
 			JFrame f = new JFrame();
-			f.setSize(200 + size*100, 200 + size*100);
 			f.setTitle("n-queens Puzzle");
 			f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 			f.getContentPane().add(g);
+			// as large as the board, unless that does not fit the screen
+			f.pack();
+			f.setLocationRelativeTo(null);
 			f.setVisible(true);
 		}
 	    catch (IOException e){
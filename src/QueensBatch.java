@@ -0,0 +1,213 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs an IQueensLogic without a display, replaying a stream of moves and
+ * writing the board after each of them. At the end the latency percentiles
+ * of the moves and the total throughput are reported on standard error.
+ * So are the diagnostics the logic prints while it builds the board, so
+ * standard output holds only the boards.
+ *
+ * Each line of the input holds one move, either as insertQueen(column,row)
+ * or as two numbers "column row". Blank lines and lines starting with # are
+ * skipped. For an IUndoableQueensLogic the lines removeQueen(column,row),
+ * undo and redo are moves as well.
+ *
+ * Usage: java QueensBatch Logic [size] [moves] [output]
+ *  moves  - file with the moves, or - for standard input (default)
+ *  output - file for the boards, or - for standard output (default)
+ *
+ * @author Sabina Hult
+ */
+public class QueensBatch {
+    private static final Pattern MOVE = Pattern.compile(
+            "(?:insertQueen\\s*\\(\\s*)?(\\d+)\\s*[,\\s]\\s*(\\d+)\\s*\\)?");
+    private static final Pattern REMOVE = Pattern.compile(
+            "removeQueen\\s*\\(\\s*(\\d+)\\s*,\\s*(\\d+)\\s*\\)");
+
+    public static void main(String[] args) {
+        if(args.length < 1) {
+            printHelp("You have to provide at least one argument (an IQueensLogic-implementation)");
+            System.exit(1);
+        }
+
+        IQueensLogic logic;
+        try {
+            logic = Queens.parseLogicParam(args[0]);
+        } catch(ClassNotFoundException | NoSuchMethodException | InstantiationException
+                | IllegalAccessException | InvocationTargetException e) {
+            printHelp("Could not create the logic " + args[0] + ": " + e);
+            System.exit(1);
+            return;
+        }
+
+        int size = 8;
+        if(args.length >= 2) {
+            try {
+                size = Integer.parseInt(args[1]);
+            } catch(NumberFormatException nfe) {
+                printHelp("Could not parse size value: " + args[1]);
+                System.exit(1);
+            }
+            if(size <= 4) {
+                printHelp("Board size should be greater than 4");
+                System.exit(1);
+            }
+        }
+
+        String moves = args.length >= 3 ? args[2] : "-";
+        String output = args.length >= 4 ? args[3] : "-";
+
+        // the boards are the only output, anything the logic prints goes to standard error
+        PrintStream stdout = System.out;
+        System.setOut(System.err);
+        try(BufferedReader in = new BufferedReader(open(moves));
+            PrintWriter out = new PrintWriter(create(output, stdout))) {
+            run(logic, size, in, out);
+        } catch(IOException e) {
+            System.err.println("Could not replay the moves: " + e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Replays the moves read from in on a new board and writes every board to out
+     */
+    public static void run(IQueensLogic logic, int size, BufferedReader in, PrintWriter out) throws IOException {
+        long initStart = System.nanoTime();
+        logic.initializeBoard(size);
+        long initTime = System.nanoTime() - initStart;
+
+        out.println("initial board");
+        printBoard(logic.getBoard(), out);
+
+        IUndoableQueensLogic undoable = logic instanceof IUndoableQueensLogic
+                ? (IUndoableQueensLogic) logic : null;
+        List<Long> latencies = new ArrayList<>();
+        int lineNumber = 0;
+        String line;
+        while((line = in.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")) continue;
+
+            if(undoable != null && (line.equals("undo") || line.equals("redo"))) {
+                long start = System.nanoTime();
+                if(line.equals("undo")) undoable.undo();
+                else undoable.redo();
+                latencies.add(System.nanoTime() - start);
+
+                out.println("move " + latencies.size() + ": " + line);
+                printBoard(logic.getBoard(), out);
+                continue;
+            }
+
+            Matcher m = MOVE.matcher(line);
+            boolean remove = false;
+            if(!m.matches() && undoable != null) {
+                m = REMOVE.matcher(line);
+                remove = true;
+            }
+            if(!m.matches()) {
+                System.err.println("Line " + lineNumber + ": not a move: " + line);
+                continue;
+            }
+            int column;
+            int row;
+            try {
+                column = Integer.parseInt(m.group(1));
+                row = Integer.parseInt(m.group(2));
+            } catch(NumberFormatException nfe) {
+                // too many digits for an int
+                column = row = Integer.MAX_VALUE;
+            }
+            if(column >= size || row >= size) {
+                System.err.println("Line " + lineNumber + ": outside the board: " + line);
+                continue;
+            }
+
+            long start = System.nanoTime();
+            if(remove) undoable.removeQueen(column, row);
+            else logic.insertQueen(column, row);
+            latencies.add(System.nanoTime() - start);
+
+            out.println("move " + latencies.size() + ": " + (remove ? "removeQueen(" : "insertQueen(")
+                    + column + "," + row + ")");
+            printBoard(logic.getBoard(), out);
+        }
+        out.flush();
+
+        report(initTime, latencies);
+    }
+
+    /**
+     * Writes the board one row per line: Q for a queen, x where no queen
+     * is allowed and . for a free position
+     */
+    public static void printBoard(int[][] board, PrintWriter out) {
+        for(int r = 0; r < board.length; r++) {
+            StringBuilder line = new StringBuilder(board.length);
+            for(int c = 0; c < board.length; c++) {
+                line.append(board[c][r] == 1 ? 'Q' : board[c][r] == -1 ? 'x' : '.');
+            }
+            out.println(line);
+        }
+    }
+
+    private static void report(long initTime, List<Long> latencies) {
+        System.err.printf("initializeBoard: %.3f ms%n", initTime / 1e6);
+        if(latencies.isEmpty()) {
+            System.err.println("No moves");
+            return;
+        }
+
+        long[] sorted = new long[latencies.size()];
+        long total = 0;
+        for(int i = 0; i < sorted.length; i++) {
+            sorted[i] = latencies.get(i);
+            total += sorted[i];
+        }
+        Arrays.sort(sorted);
+
+        System.err.printf("moves: %d, total %.3f ms, throughput %.1f moves/s%n",
+                sorted.length, total / 1e6, sorted.length / (total / 1e9));
+        System.err.printf("latency us: p50 %.1f, p90 %.1f, p99 %.1f, max %.1f%n",
+                percentile(sorted, 0.50) / 1e3, percentile(sorted, 0.90) / 1e3,
+                percentile(sorted, 0.99) / 1e3, sorted[sorted.length - 1] / 1e3);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.max(0, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    private static Reader open(String name) throws IOException {
+        return name.equals("-") ? new InputStreamReader(System.in) : new FileReader(name);
+    }
+
+    private static Writer create(String name, PrintStream stdout) throws IOException {
+        return name.equals("-") ? new PrintWriter(stdout) : new FileWriter(name);
+    }
+
+    private static void printHelp(String errMsg) {
+        System.err.println(errMsg);
+        System.err.println("Usage: java QueensBatch QueensLogic [size] [moves] [output]");
+        System.err.println("\tQueensLogic\t- specifies a class implementing IQueensLogic");
+        System.err.println("\tsize\t\t- Must be an integer greater or equal to 5. Defaults to 8.");
+        System.err.println("\tmoves\t\t- file of insertQueen(column,row) lines, - for standard input (default)");
+        System.err.println("\t\t\t  removeQueen(column,row), undo and redo lines need an IUndoableQueensLogic");
+        System.err.println("\toutput\t\t- file for the resulting boards, - for standard output (default)");
+    }
+}
@@ -0,0 +1,107 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The Java Flight Recorder events of the configurator, recorded with e.g.
+ * -XX:StartFlightRecording=filename=queens.jfr and shown in JDK Mission
+ * Control under Queens. An event that is not being recorded costs next to
+ * nothing, so they are always created.
+ *
+ * @author Sabina Hult
+ */
+public class QueensEvents {
+
+    private QueensEvents() {
+    }
+
+    @Name("queens.BuildPhase")
+    @Label("Build Phase")
+    @Category({"Queens", "Build"})
+    @Description("One step of building the rules of a board")
+    public static class BuildPhase extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Board")
+        String board;
+
+        @Label("Live Nodes")
+        int liveNodes;
+
+        @Label("Node Table Size")
+        int tableSize;
+    }
+
+    @Name("queens.InsertQueen")
+    @Label("Insert Queen")
+    @Category({"Queens", "Play"})
+    @Description("A queen placed by the user, including the propagation to the board")
+    public static class InsertQueen extends Event {
+        @Label("Column")
+        int column;
+
+        @Label("Row")
+        int row;
+
+        @Label("Cached")
+        @Description("The board was taken from the cache of visited states")
+        boolean cached;
+
+        @Label("BDD Nodes")
+        int nodes;
+    }
+
+    @Name("queens.GarbageCollection")
+    @Label("BDD Garbage Collection")
+    @Category({"Queens", "Engine"})
+    public static class GarbageCollection extends Event {
+        @Label("Engine")
+        String engine;
+
+        @Label("Collection Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long collectionTime;
+
+        @Label("Node Table Size")
+        int tableSize;
+
+        @Label("Free Nodes")
+        int freeNodes;
+    }
+
+    @Name("queens.NodeTableResize")
+    @Label("Node Table Resize")
+    @Category({"Queens", "Engine"})
+    public static class NodeTableResize extends Event {
+        @Label("Engine")
+        String engine;
+
+        @Label("Old Size")
+        int oldSize;
+
+        @Label("New Size")
+        int newSize;
+    }
+
+    @Name("queens.Reorder")
+    @Label("Variable Reordering")
+    @Category({"Queens", "Engine"})
+    public static class Reorder extends Event {
+        @Label("Engine")
+        String engine;
+
+        @Label("Reorder Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long reorderTime;
+
+        @Label("Nodes Before")
+        int before;
+
+        @Label("Nodes After")
+        int after;
+    }
+}
@@ -2,112 +2,299 @@ import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * GUI to show the n-queens problem, listening for input from the user, and interact with the interactive
  * configurator. The user clicks on the place where (s)he wants to place a queen, after which the board
- * is updated using the interactive configurator (logic) parsed to the constructor as a parameter.  
-
+ * is updated using the interactive configurator (logic) parsed to the constructor as a parameter.
+ *
+ * The images are decoded off the event dispatch thread and drawn from tiles scaled once to the size of
+ * the window, so large boards fit the screen. The logic runs on a worker thread, and after a move only
+ * the cells that changed are painted again.
+ *
  * @author Mai Ajspur
  * @version 16.02.2018
- * 
+ *
  * */
 public class QueensGUI extends JComponent implements MouseListener {
 	final static long 	serialVersionUID = 1234567890;
-	final int 			imgSize = 100; // Size of images to draw board
-	
-	private IQueensLogic logic; // The logic that keeps track of what is legal or not	
-	
-	// Images for drawing the board
+	final static int 	imgSize = 100; // Size of the images, and the largest size a tile is drawn at
+	final static String[] imgFiles = {
+		"maze.png", "freddie.png", "invalid.png", "backgroundWhite.png", "backgroundBlack.png",
+		"board_left.png", "board_right.png", "board_top.png", "board_bottom.png",
+		"corner_top_left.png", "corner_bottom_left.png", "corner_top_right.png", "corner_bottom_right.png" };
+
+	private IQueensLogic logic; // The logic that keeps track of what is legal or not
+	// The moves are made here, one at a time, so the logic is never used by two threads
+	private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "queens-logic");
+		thread.setDaemon(true);
+		return thread;
+	});
+	// The board being shown, a copy of the board of the logic after the last move
+	private int[][] shown;
+
+	// Images for drawing the board, null until they are decoded
 	private Image 		part, queen, invalid, backgroundW, backgroundB;
 	private Image 		border_left,border_right,border_top,border_bottom;
 	private Image 		corner_left_top, corner_left_bottom,corner_right_top,corner_right_bottom;
-	
+
+	// Tiles of the size of one cell: [white, black][empty, queen, invalid], then borders and corners
+	private final Tile[][] cells = new Tile[2][3];
+	private Tile 		tile_left, tile_right, tile_top, tile_bottom;
+	private Tile 		tile_left_top, tile_left_bottom, tile_right_top, tile_right_bottom;
+	private int 		tileSize; // Size the tiles were scaled to
+
 	public QueensGUI(IQueensLogic logic)  throws IOException {
-		part = ImageIO.read(new File("imgs/maze.png"));
-		queen = ImageIO.read(new File("imgs/freddie.png"));
-		invalid = ImageIO.read(new File("imgs/invalid.png"));
-		backgroundW = ImageIO.read(new File("imgs/backgroundWhite.png"));
-        backgroundB = ImageIO.read(new File("imgs/backgroundBlack.png"));
-		
-		border_left = ImageIO.read(new File("imgs/board_left.png"));
-		border_right = ImageIO.read(new File("imgs/board_right.png"));
-		border_top = ImageIO.read(new File("imgs/board_top.png"));
-		border_bottom = ImageIO.read(new File("imgs/board_bottom.png"));
-		corner_left_top = ImageIO.read(new File("imgs/corner_top_left.png"));
-		corner_left_bottom = ImageIO.read(new File("imgs/corner_bottom_left.png"));
-		corner_right_top = ImageIO.read(new File("imgs/corner_top_right.png"));
-		corner_right_bottom = ImageIO.read(new File("imgs/corner_bottom_right.png"));
-		
+		// missing images are reported at once, decoding them is left to a background thread
+		for(String file : imgFiles) {
+			if(!new File("imgs", file).isFile()) throw new FileNotFoundException("imgs/" + file);
+		}
+		new ImageLoader().execute();
+
 		this.logic = logic;
+		this.shown = copy(logic.getBoard());
 		this.addMouseListener(this);
 	}
 
 	/*
-	 * Draws the current game board.
+	 * The size of the board with cells of imgSize, or smaller if that does not fit the screen.
 	 */
-	public void paint(Graphics g) {
-		this.setDoubleBuffered(true);
-		Insets in = getInsets();               
-		g.translate(in.left, in.top);            
+	public Dimension getPreferredSize() {
+		int tiles = shown.length + 2;
+		int fit = imgSize;
+		if(!GraphicsEnvironment.isHeadless()) {
+			Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+			// leave room for the title bar and borders of the frame
+			fit = (Math.min(screen.width, screen.height) - 64) / tiles;
+		}
+		int tile = Math.max(1, Math.min(imgSize, fit));
+		Insets in = getInsets();
+		return new Dimension(tile * tiles + in.left + in.right, tile * tiles + in.top + in.bottom);
+	}
 
-		int[][] gameboard = logic.getBoard();
+	/*
+	 * Draws the cells of the current game board that are within the clip, with its borders.
+	 */
+	protected void paintComponent(Graphics g) {
+		if(part == null) return; // the images are not decoded yet
+		Insets in = getInsets();
+		g.translate(in.left, in.top);
+
+		int[][] gameboard = shown;
 		int cols = gameboard.length;
 		int rows = cols;
-		
-        // draw borders
-        for (int i = 0; i < cols; i++) {
-            g.drawImage(border_left, 0, imgSize+imgSize*i, this);
-            g.drawImage(border_right, imgSize + gameboard.length*imgSize, imgSize + imgSize*i, this); 
-            g.drawImage(border_top, imgSize+imgSize*i, 0, this);
-            g.drawImage(border_bottom, imgSize+imgSize*i, imgSize + gameboard.length*imgSize, this);
-        }
-		// draw corners
-		g.drawImage(corner_left_top, 0, 0, this);
-		g.drawImage(corner_left_bottom, 0, imgSize + rows*imgSize, this);
-		g.drawImage(corner_right_top, imgSize + imgSize*cols, 0, this);
-		g.drawImage(corner_right_bottom, imgSize + imgSize*cols, imgSize + rows*imgSize, this);
-
-        // draw board
-		for(int c = 0; c < cols; c++) {
-			for(int r = 0; r < rows; r++) {
-				int player = gameboard[c][r];
-                
-                if((c+r)%2 == 0) // white squares
-                	g.drawImage(backgroundW, imgSize+imgSize*c, imgSize+imgSize*r, this);
-                else // black squares
-                	g.drawImage(backgroundB, imgSize+imgSize*c, imgSize+imgSize*r, this);
-                
-                if(player == 1) // queen stands on square
-					g.drawImage(queen, imgSize+imgSize*c, imgSize+imgSize*r, this);
-				if(player == -1) // no queen allowed
-					g.drawImage(invalid, imgSize+imgSize*c, imgSize+imgSize*r, this);
-				
-                g.drawImage(part, imgSize+imgSize*c, imgSize+imgSize*r, this);
+		int size = tileSize();
+		scaleTiles(size);
+
+		Rectangle clip = g.getClipBounds();
+		if(clip == null) clip = new Rectangle(0, 0, size * (cols + 2), size * (rows + 2));
+		// the tiles touched by the clip, including the borders around the board
+		int firstCol = Math.max(0, clip.x / size), lastCol = Math.min(cols + 1, (clip.x + clip.width - 1) / size);
+		int firstRow = Math.max(0, clip.y / size), lastRow = Math.min(rows + 1, (clip.y + clip.height - 1) / size);
+
+		boolean lost = false;
+		for(int x = firstCol; x <= lastCol; x++) {
+			for(int y = firstRow; y <= lastRow; y++) {
+				Tile tile;
+				if(x == 0) tile = y == 0 ? tile_left_top : y == rows + 1 ? tile_left_bottom : tile_left;
+				else if(x == cols + 1) tile = y == 0 ? tile_right_top : y == rows + 1 ? tile_right_bottom : tile_right;
+				else if(y == 0) tile = tile_top;
+				else if(y == rows + 1) tile = tile_bottom;
+				else {
+					int c = x - 1, r = y - 1;
+					int player = gameboard[c][r];
+					// white squares first, then empty, queen stands on square, no queen allowed
+					tile = cells[(c+r)%2][player == 1 ? 1 : player == -1 ? 2 : 0];
+				}
+				lost |= !tile.draw(g, x * size, y * size);
 			}
-		}    
+		}
+		g.translate(-in.left, -in.top);
+		// a tile lost by the graphics card is drawn again on the next paint
+		if(lost) repaint();
  	}
 
 	/*
 	 * When the user clicks on one of the board squares, the corresponding
-	 * column and row is parsed to the logic. 
+	 * column and row is parsed to the logic on the worker thread.
+	 * An exception thrown by the logic is shown in a dialog.
 	 */
 	public void mouseClicked(MouseEvent e) {
-        int col = e.getX()/100 - 1;
-        int row = e.getY()/100 - 1;
+		Insets in = getInsets();
+		int size = tileSize();
+        int col = (e.getX() - in.left)/size - 1;
+        int row = (e.getY() - in.top)/size - 1;
+
+        int cols = shown.length;
+		if((col >= 0) && (col < cols) && (row >= 0) && (row < cols)) {
+			worker.execute(() -> {
+				try {
+					logic.insertQueen(col, row);
+				} catch(RuntimeException ex) {
+					// the worker would drop it, so it is reported on the EDT
+					SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+							"Could not place a queen at column " + col + ", row " + row + ": " + ex.getMessage(),
+							"Queens", JOptionPane.ERROR_MESSAGE));
+					return;
+				}
+				int[][] board = copy(logic.getBoard());
+				SwingUtilities.invokeLater(() -> show(board));
+			});
+		}
+	}
+
+	/*
+	 * Shows the board, painting only the cells that differ from the board shown so far.
+	 */
+	private void show(int[][] board) {
+		int[][] old = shown;
+		shown = board;
+		if(old.length != board.length) {
+			repaint();
+			return;
+		}
+		Insets in = getInsets();
+		int size = tileSize();
+		for(int c = 0; c < board.length; c++) {
+			for(int r = 0; r < board.length; r++) {
+				if(board[c][r] != old[c][r]) repaint(in.left + size * (c + 1), in.top + size * (r + 1), size, size);
+			}
+		}
+	}
+
+	/*
+	 * The size of one tile, so the board and its borders fill the component.
+	 */
+	private int tileSize() {
+		Insets in = getInsets();
+		int width = getWidth() - in.left - in.right;
+		int height = getHeight() - in.top - in.bottom;
+		return Math.max(1, Math.min(width, height) / (shown.length + 2));
+	}
+
+	/*
+	 * Makes tiles of the given size, unless they have it already.
+	 */
+	private void scaleTiles(int size) {
+		if(size == tileSize) return;
+		tileSize = size;
+		Image[] backgrounds = { backgroundW, backgroundB };
+		for(int b = 0; b < 2; b++) {
+			cells[b][0] = new Tile(size, backgrounds[b], part);
+			cells[b][1] = new Tile(size, backgrounds[b], queen, part);
+			cells[b][2] = new Tile(size, backgrounds[b], invalid, part);
+		}
+		tile_left = new Tile(size, border_left);
+		tile_right = new Tile(size, border_right);
+		tile_top = new Tile(size, border_top);
+		tile_bottom = new Tile(size, border_bottom);
+		tile_left_top = new Tile(size, corner_left_top);
+		tile_left_bottom = new Tile(size, corner_left_bottom);
+		tile_right_top = new Tile(size, corner_right_top);
+		tile_right_bottom = new Tile(size, corner_right_bottom);
+	}
 
-        int size = logic.getBoard().length;
-		if((col >= 0) && (col < size) && (row >= 0) && (row < size))
-			logic.insertQueen(col, row);
-		repaint();
+	private static int[][] copy(int[][] board) {
+		int[][] copy = new int[board.length][];
+		for(int c = 0; c < board.length; c++) copy[c] = board[c].clone();
+		return copy;
 	}
 
-	// Not used methods from the interface of MouseListener 
+	/*
+	 * Images drawn on top of each other and scaled to one tile, kept in video memory when possible.
+	 */
+	private class Tile {
+		private final int size;
+		private final Image[] layers;
+		private Image image;
+
+		Tile(int size, Image... layers) {
+			this.size = size;
+			this.layers = layers;
+		}
+
+		/*
+		 * Draws the tile, first drawing the images into it if the tile was lost or never drawn.
+		 * Returns false if the tile was lost again while it was drawn.
+		 */
+		boolean draw(Graphics g, int x, int y) {
+			GraphicsConfiguration gc = getGraphicsConfiguration();
+			if(image == null || (image instanceof VolatileImage) != (gc != null)) {
+				// a component that is not shown, e.g. when printed, draws from ordinary images
+				image = gc == null ? new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB)
+						: gc.createCompatibleVolatileImage(size, size, Transparency.TRANSLUCENT);
+				render();
+			} else if(image instanceof VolatileImage) {
+				int state = ((VolatileImage) image).validate(gc);
+				if(state == VolatileImage.IMAGE_INCOMPATIBLE) {
+					image = gc.createCompatibleVolatileImage(size, size, Transparency.TRANSLUCENT);
+					render();
+				} else if(state == VolatileImage.IMAGE_RESTORED) {
+					render();
+				}
+			}
+			g.drawImage(image, x, y, null);
+			return !(image instanceof VolatileImage) || !((VolatileImage) image).contentsLost();
+		}
+
+		private void render() {
+			Graphics2D g = (Graphics2D) image.getGraphics();
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, size, size);
+			g.setComposite(AlphaComposite.SrcOver);
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			for(Image layer : layers) g.drawImage(layer, 0, 0, size, size, null);
+			g.dispose();
+		}
+	}
+
+	/*
+	 * Decodes the images on a background thread and shows the board when they are ready.
+	 */
+	private class ImageLoader extends SwingWorker<Image[], Void> {
+		protected Image[] doInBackground() throws IOException {
+			Image[] images = new Image[imgFiles.length];
+			for(int i = 0; i < images.length; i++) images[i] = ImageIO.read(new File("imgs", imgFiles[i]));
+			return images;
+		}
+
+		protected void done() {
+			Image[] images;
+			try {
+				images = get();
+			} catch(Exception e) {
+				System.err.println("Could not read the images in " + new File("imgs").getAbsolutePath() + ": " + e);
+				return;
+			}
+			part = images[0];
+			queen = images[1];
+			invalid = images[2];
+			backgroundW = images[3];
+			backgroundB = images[4];
+			border_left = images[5];
+			border_right = images[6];
+			border_top = images[7];
+			border_bottom = images[8];
+			corner_left_top = images[9];
+			corner_left_bottom = images[10];
+			corner_right_top = images[11];
+			corner_right_bottom = images[12];
+			tileSize = 0;
+			repaint();
+		}
+	}
+
+	// Not used methods from the interface of MouseListener
 	public void mouseEntered(MouseEvent e) {}
 	public void mouseExited(MouseEvent e) {}
 	public void mousePressed(MouseEvent e) {}
 	public void mouseReleased(MouseEvent e) {}
 }
-
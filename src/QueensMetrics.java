@@ -0,0 +1,329 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * A registry of counters, gauges and latency histograms of the configurator,
+ * so a slow build or a slow click can be traced to garbage collection, the
+ * node table growing or the propagation to the board.
+ *
+ * The registry is chosen with the system property queens.metrics:
+ *
+ *  none    - nothing is recorded (default)
+ *  on      - metrics are recorded and printed by dump
+ *  stderr  - as on, and dumped to standard error when the program exits
+ *  a file  - as on, and dumped to the file when the program exits
+ *
+ * When the registry is off every method returns at once, so the calls can
+ * stay in the hot paths. The same places also create QueensEvents for the
+ * flight recorder, which are recorded whether the registry is on or not.
+ *
+ * @author Sabina Hult
+ */
+public class QueensMetrics {
+    public static final String PROPERTY = "queens.metrics";
+    private static final String TARGET = System.getProperty(PROPERTY, "none").trim();
+    public static final boolean ENABLED = !TARGET.equals("none");
+
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> timers = new ConcurrentHashMap<>();
+
+    static {
+        if(ENABLED && !TARGET.equals("on")) {
+            Runtime.getRuntime().addShutdownHook(new Thread(QueensMetrics::dumpToTarget, "queens-metrics"));
+        }
+    }
+
+    private QueensMetrics() {
+    }
+
+    /**
+     * Adds one to the counter
+     */
+    public static void count(String name) {
+        count(name, 1);
+    }
+
+    public static void count(String name, long delta) {
+        if(!ENABLED) return;
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * Sets the gauge to its current value, keeping track of the largest one
+     */
+    public static void gauge(String name, long value) {
+        if(!ENABLED) return;
+        gauges.computeIfAbsent(name, k -> new Gauge()).set(value);
+    }
+
+    /**
+     * Returns the time to pass to time, or 0 if nothing is recorded
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time since start, taken from start(), in the histogram
+     */
+    public static void time(String name, long start) {
+        if(!ENABLED) return;
+        timers.computeIfAbsent(name, k -> new Histogram()).record(System.nanoTime() - start);
+    }
+
+    /**
+     * Records a duration in the histogram
+     */
+    public static void timeNanos(String name, long nanos) {
+        if(!ENABLED) return;
+        timers.computeIfAbsent(name, k -> new Histogram()).record(nanos);
+    }
+
+    /**
+     * Returns the value of the counter, 0 if it was never counted
+     */
+    public static long getCount(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Records the size of the node table and the live nodes of the engine,
+     * and the cache statistics if it keeps them
+     */
+    public static void sampleEngine(BDDEngine engine) {
+        if(!ENABLED) return;
+        gauge("nodes.live", engine.getNodeNum());
+        gauge("nodes.table", engine.getNodeTableSize());
+        long[] cache = engine.getCacheHitsAndMisses();
+        if(cache != null) {
+            gauge("cache.hits", cache[0]);
+            gauge("cache.misses", cache[1]);
+        }
+    }
+
+    /**
+     * Sets a monitor on the engine if the registry is on or the flight
+     * recorder is running, so the callbacks cost nothing otherwise
+     */
+    public static void watch(BDDEngine engine) {
+        if(ENABLED || FlightRecorder.isInitialized()) engine.setMonitor(monitor(engine.getName()));
+    }
+
+    /**
+     * Returns a monitor recording the work the engine does on its own, both
+     * in the registry and as flight recorder events
+     */
+    public static EngineMonitor monitor(String engine) {
+        return new EngineMonitor() {
+            @Override
+            public void collected(long nanos, int tableSize, int freeNodes) {
+                count("engine.gc");
+                timeNanos("engine.gc", nanos);
+                gauge("nodes.table", tableSize);
+                QueensEvents.GarbageCollection event = new QueensEvents.GarbageCollection();
+                if(event.shouldCommit()) {
+                    event.engine = engine;
+                    event.collectionTime = nanos;
+                    event.tableSize = tableSize;
+                    event.freeNodes = freeNodes;
+                    event.commit();
+                }
+            }
+
+            @Override
+            public void resized(int oldSize, int newSize) {
+                count("engine.resize");
+                gauge("nodes.table", newSize);
+                QueensEvents.NodeTableResize event = new QueensEvents.NodeTableResize();
+                if(event.shouldCommit()) {
+                    event.engine = engine;
+                    event.oldSize = oldSize;
+                    event.newSize = newSize;
+                    event.commit();
+                }
+            }
+
+            @Override
+            public void reordered(long millis, int before, int after) {
+                count("engine.reorder");
+                timeNanos("engine.reorder", millis * 1000000);
+                QueensEvents.Reorder event = new QueensEvents.Reorder();
+                if(event.shouldCommit()) {
+                    event.engine = engine;
+                    event.reorderTime = millis;
+                    event.before = before;
+                    event.after = after;
+                    event.commit();
+                }
+            }
+        };
+    }
+
+    /**
+     * Starts timing a phase of building the rules of the board
+     */
+    public static Phase phase(String name, String board) {
+        return new Phase(name, board);
+    }
+
+    /**
+     * Prints every metric, sorted by name
+     */
+    public static void dump(PrintStream out) {
+        for(Map.Entry<String, LongAdder> counter : new TreeMap<>(counters).entrySet()) {
+            out.println("counter " + counter.getKey() + " " + counter.getValue().sum());
+        }
+        for(Map.Entry<String, Gauge> gauge : new TreeMap<>(gauges).entrySet()) {
+            out.println("gauge " + gauge.getKey() + " " + gauge.getValue());
+        }
+        for(Map.Entry<String, Histogram> timer : new TreeMap<>(timers).entrySet()) {
+            out.println("timer " + timer.getKey() + " " + timer.getValue());
+        }
+        out.flush();
+    }
+
+    /**
+     * Forgets every metric recorded so far
+     */
+    public static void reset() {
+        counters.clear();
+        gauges.clear();
+        timers.clear();
+    }
+
+    private static void dumpToTarget() {
+        if(TARGET.equals("stderr")) {
+            dump(System.err);
+            return;
+        }
+        try(PrintStream out = new PrintStream(new FileOutputStream(TARGET))) {
+            dump(out);
+        } catch(IOException e) {
+            System.err.println("Could not write metrics to " + TARGET + ": " + e);
+        }
+    }
+
+    /**
+     * A phase of a build, recorded in the timer build.name and as a
+     * BuildPhase event when it ends
+     */
+    public static class Phase {
+        private final String name;
+        private final String board;
+        private final long start;
+        private final QueensEvents.BuildPhase event = new QueensEvents.BuildPhase();
+
+        private Phase(String name, String board) {
+            this.name = name;
+            this.board = board;
+            this.start = start();
+            event.begin();
+        }
+
+        /**
+         * Ends the phase, recording the nodes of the engine it used
+         */
+        public void end(BDDEngine engine) {
+            time("build." + name, start);
+            sampleEngine(engine);
+            event.end();
+            if(event.shouldCommit()) {
+                event.phase = name;
+                event.board = board;
+                event.liveNodes = engine.getNodeNum();
+                event.tableSize = engine.getNodeTableSize();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * The last and the largest value set
+     */
+    private static class Gauge {
+        private final AtomicLong last = new AtomicLong();
+        private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+        void set(long value) {
+            last.set(value);
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        @Override
+        public String toString() {
+            return last.get() + " (max " + max.get() + ")";
+        }
+    }
+
+    /**
+     * Counts durations in buckets of eight per power of two, so every
+     * percentile is known to within an eighth of its value
+     */
+    private static class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            nanos = Math.max(0, nanos);
+            buckets.incrementAndGet(bucket(nanos));
+            count.increment();
+            total.add(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        private static int bucket(long value) {
+            if(value < SUB_BUCKETS) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        /**
+         * Returns the smallest value in the bucket
+         */
+        private static long lowest(int bucket) {
+            if(bucket < SUB_BUCKETS) return bucket;
+            int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            int sub = bucket % SUB_BUCKETS;
+            return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        }
+
+        /**
+         * Returns the start of the bucket holding the given part of the values
+         */
+        private long percentile(double part, long n) {
+            long rank = (long) Math.ceil(part * n);
+            long seen = 0;
+            for(int b = 0; b < buckets.length(); b++) {
+                seen += buckets.get(b);
+                if(seen >= rank) return lowest(b);
+            }
+            return max.get();
+        }
+
+        @Override
+        public String toString() {
+            long n = count.sum();
+            if(n == 0) return "count 0";
+            return String.format("count %d, mean %.3f ms, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms",
+                    n, total.sum() / 1e6 / n, percentile(0.5, n) / 1e6, percentile(0.9, n) / 1e6,
+                    percentile(0.99, n) / 1e6, max.get() / 1e6);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import java.math.BigInteger;
+import java.util.BitSet;
+
+/**
+ * Exports the solutions of the n-queens puzzle, or a page of them, that keep
+ * a given set of queens. The exact number of such solutions is printed first,
+ * followed by one solution per line as the row of the queen in each column.
+ *
+ * Usage: java QueensSolutions [size] [skip] [limit] [column,row ...]
+ *
+ * @author Sabina Hult
+ */
+public class QueensSolutions {
+
+    public static void main(String[] args) {
+        int size = args.length >= 1 ? Integer.parseInt(args[0]) : 8;
+        long skip = args.length >= 2 ? Long.parseLong(args[1]) : 0;
+        long limit = args.length >= 3 ? Long.parseLong(args[2]) : Long.MAX_VALUE;
+
+        MyLogic logic = new MyLogic();
+        logic.initializeBoard(size);
+        for(int i = 3; i < args.length; i++) {
+            String[] position = args[i].split(",");
+            logic.insertQueen(Integer.parseInt(position[0]), Integer.parseInt(position[1]));
+        }
+
+        long start = System.nanoTime();
+        SolutionEnumerator solutions = logic.getSolutions();
+        BigInteger count = solutions.count();
+        System.out.println("solutions: " + count);
+
+        solutions.skip(skip).limit(limit);
+        StringBuilder line = new StringBuilder();
+        long written = 0;
+        while(solutions.hasNext()) {
+            BitSet queens = solutions.next();
+            line.setLength(0);
+            for(int cell = queens.nextSetBit(0); cell >= 0; cell = queens.nextSetBit(cell + 1)) {
+                // cells are column*size+row, so the queens come column by column
+                if(line.length() > 0) line.append(' ');
+                line.append(cell % size);
+            }
+            System.out.println(line);
+            written++;
+        }
+        System.err.printf("%d solutions written in %.1f ms%n", written, (System.nanoTime() - start) / 1e6);
+    }
+}
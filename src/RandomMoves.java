@@ -0,0 +1,50 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Random moves for the reports that play the same games on two logics. A
+ * move is {0, column, row} to insert a queen, {1, column, row} to remove
+ * one, {2} to undo and {3} to redo.
+ *
+ * @author Sabina Hult
+ */
+public class RandomMoves {
+
+    private RandomMoves() {
+    }
+
+    /**
+     * Returns a random move on the board: inserting a queen on a free cell,
+     * mostly, and now and then removing a queen, undoing or redoing. Returns
+     * null if the board is full
+     */
+    public static int[] next(int[][] board, Random random) {
+        List<int[]> free = new ArrayList<>();
+        List<int[]> queens = new ArrayList<>();
+        for(int c = 0; c < board.length; c++) {
+            for(int r = 0; r < board.length; r++) {
+                if(board[c][r] == 0) free.add(new int[] {0, c, r});
+                if(board[c][r] == 1) queens.add(new int[] {1, c, r});
+            }
+        }
+
+        int choice = random.nextInt(10);
+        if(choice == 0) return new int[] {2};
+        if(choice == 1) return new int[] {3};
+        if(choice == 2 && !queens.isEmpty()) return queens.get(random.nextInt(queens.size()));
+        return free.isEmpty() ? null : free.get(random.nextInt(free.size()));
+    }
+
+    /**
+     * Makes the move on the logic
+     */
+    public static void play(IUndoableQueensLogic logic, int[] move) {
+        switch(move[0]) {
+            case 0: logic.insertQueen(move[1], move[2]); break;
+            case 1: logic.removeQueen(move[1], move[2]); break;
+            case 2: logic.undo(); break;
+            default: logic.redo();
+        }
+    }
+}
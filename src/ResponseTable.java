@@ -0,0 +1,406 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The board of every set of queens that can be reached by clicking, compiled
+ * ahead of time, so a click is answered by one lookup instead of BDD work.
+ * Queens are only placed on cells that are neither ruled out nor forced, so
+ * only some subsets of the solutions can be reached, and removing a queen
+ * or undoing a move reaches one of them again. For 8 queens these are 11609
+ * sets of queens, for 10 queens 368977 in a table of 20 MB.
+ *
+ * A table is a file holding, for one variant, the board of every such set
+ * of queens:
+ *
+ *  int    magic number
+ *  int    format version
+ *  UTF    key of the variant (BoardVariant.getKey)
+ *  int    size of the board
+ *  int    number of longs in a set of cells
+ *  int    number of entries
+ *  int    number of slots of the index, a power of two
+ *  long[] per entry, the placed queens, the queens all solutions use and
+ *         the cells some solution uses, each a set of cells column*size+row
+ *  int[]  per slot of the index, 0 or the number of an entry plus one
+ *  long   CRC32 of all of the above
+ *
+ * The placed queens also have the cell size*size set, so no key is all
+ * zeros. An entry is found by hashing the placed queens to a slot of the
+ * index and probing the next slots until the key or an empty slot. Tables
+ * are read through a memory mapped buffer and never copied.
+ *
+ * The directory is given by the system property queens.responses (default
+ * responses in the working directory); the value none turns the tables off.
+ * Tables are compiled, and read back and checked, by running this class:
+ *
+ * Usage: java ResponseTable [from] [to]  (board sizes, defaults 8 and 10,
+ * of the variant given by queens.variant)
+ *
+ * @author Sabina Hult
+ */
+public class ResponseTable {
+    public static final String PROPERTY = "queens.responses";
+
+    private static final int MAGIC = 0x4e515254; // "NQRT"
+    private static final int VERSION = 1;
+    // sets of cells per entry: placed queens, forced queens, free cells
+    private static final int SETS = 3;
+
+    private final String key;
+    private final int size;
+    private final int words;
+    private final int entries;
+    private final LongBuffer sets;
+    private final IntBuffer index;
+
+    private ResponseTable(String key, int size, int words, int entries, LongBuffer sets, IntBuffer index) {
+        this.key = key;
+        this.size = size;
+        this.words = words;
+        this.entries = entries;
+        this.sets = sets;
+        this.index = index;
+    }
+
+    public static void main(String[] args) {
+        int from = args.length >= 1 ? Integer.parseInt(args[0]) : 8;
+        int to = args.length >= 2 ? Integer.parseInt(args[1]) : 10;
+        File directory = directoryFromProperty();
+        if(directory == null) {
+            System.err.println("Response tables are turned off by " + PROPERTY + "=none");
+            System.exit(1);
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%4s %10s %10s %10s  %s%n", "n", "states", "ms", "MB", "file"));
+        for(int n = from; n <= to; n++) {
+            BoardVariant variant = BoardVariant.fromProperty(n);
+            CompiledBoard compiled = new MyLogic().compile(variant);
+
+            long start = System.nanoTime();
+            List<long[]> states = compile(compiled);
+            File file = file(directory, variant);
+            try {
+                save(file, variant, states);
+            } catch(IOException e) {
+                System.err.println("Could not write response table " + file + ": " + e);
+                System.exit(1);
+            }
+            double millis = (System.nanoTime() - start) / 1e6;
+
+            ResponseTable table = load(file, variant);
+            if(table == null || !table.holds(states)) {
+                System.err.println("The response table " + file + " does not hold the boards written to it");
+                System.exit(1);
+            }
+            report.append(String.format("%4d %10d %10.0f %10.1f  %s%n", n, states.size(),
+                    millis, file.length() / 1e6, file));
+        }
+
+        System.out.println();
+        System.out.print(report);
+    }
+
+    /**
+     * Returns the table of the variant from the directory named by the
+     * system property, or null if there is none or the tables are turned off
+     */
+    public static ResponseTable fromProperty(BoardVariant variant) {
+        File directory = directoryFromProperty();
+        return directory == null ? null : load(file(directory, variant), variant);
+    }
+
+    private static File directoryFromProperty() {
+        String dir = System.getProperty(PROPERTY, "responses");
+        return dir.equals("none") ? null : new File(dir);
+    }
+
+    private static File file(File directory, BoardVariant variant) {
+        return new File(directory, variant.getKey().replaceAll("[^A-Za-z0-9_.-]", "_") + ".table");
+    }
+
+    /**
+     * Returns the number of sets of queens in the table
+     */
+    public int getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the board of the placed queens, cell column*size+row, or null
+     * if the table does not hold them
+     */
+    public int[][] lookup(BitSet placed) {
+        long[] wanted = key(placed, size, words);
+        int mask = index.capacity() - 1;
+        for(int slot = hash(wanted) & mask; ; slot = (slot + 1) & mask) {
+            int entry = index.get(slot) - 1;
+            if(entry < 0) return null;
+            if(matches(entry, wanted)) return board(entry);
+        }
+    }
+
+    /**
+     * Returns true if the table gives the board of every state, as returned
+     * by compile
+     */
+    private boolean holds(List<long[]> states) {
+        if(states.size() != entries) return false;
+        for(long[] state : states) {
+            BitSet placed = BitSet.valueOf(Arrays.copyOf(state, words));
+            placed.clear(size * size);
+            int[][] board = lookup(placed);
+            if(board == null) return false;
+            for(int c = 0; c < size; c++) {
+                for(int r = 0; r < size; r++) {
+                    int cell = BoardState.cell(c, r, size);
+                    long forced = state[words + cell / 64] & (1L << cell);
+                    long free = state[2 * words + cell / 64] & (1L << cell);
+                    if(board[c][r] != (forced != 0 ? 1 : free != 0 ? 0 : -1)) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(int entry, long[] wanted) {
+        int offset = entry * SETS * words;
+        for(int w = 0; w < words; w++) {
+            if(sets.get(offset + w) != wanted[w]) return false;
+        }
+        return true;
+    }
+
+    private int[][] board(int entry) {
+        int forced = (entry * SETS + 1) * words;
+        int free = (entry * SETS + 2) * words;
+        int[][] board = new int[size][size];
+        for(int c = 0; c < size; c++) {
+            for(int r = 0; r < size; r++) {
+                int cell = BoardState.cell(c, r, size);
+                if(bit(forced, cell)) board[c][r] = 1;
+                else board[c][r] = bit(free, cell) ? 0 : -1;
+            }
+        }
+        return board;
+    }
+
+    private boolean bit(int offset, int cell) {
+        return (sets.get(offset + cell / 64) & (1L << cell)) != 0;
+    }
+
+    /**
+     * Returns the board of every set of queens reachable on the compiled
+     * board, each as the placed queens, the forced queens and the free cells
+     */
+    static List<long[]> compile(CompiledBoard compiled) {
+        List<long[]> states = new ArrayList<>();
+        int rules = compiled.copyRules();
+        explore(compiled, new BitSet(), rules, new HashSet<>(), states);
+        compiled.free(rules);
+        return states;
+    }
+
+    /**
+     * Adds the state of the queens, and of every set of queens reachable
+     * from it by placing more, that was not visited before. The bdd is the
+     * rules restricted by the queens
+     */
+    private static void explore(CompiledBoard compiled, BitSet placed, int bdd,
+                                Set<BitSet> visited, List<long[]> states) {
+        if(!visited.add(placed)) return;
+        int size = compiled.getSize();
+        int words = words(size);
+        int[][] board = compiled.boardOf(placed, bdd);
+
+        BitSet forced = new BitSet();
+        BitSet free = new BitSet();
+        for(int c = 0; c < size; c++) {
+            for(int r = 0; r < size; r++) {
+                if(board[c][r] == 1) forced.set(BoardState.cell(c, r, size));
+                if(board[c][r] == 0) free.set(BoardState.cell(c, r, size));
+            }
+        }
+        long[] state = new long[SETS * words];
+        System.arraycopy(key(placed, size, words), 0, state, 0, words);
+        System.arraycopy(longs(forced, words), 0, state, words, words);
+        System.arraycopy(longs(free, words), 0, state, 2 * words, words);
+        states.add(state);
+
+        for(int cell = free.nextSetBit(0); cell >= 0; cell = free.nextSetBit(cell + 1)) {
+            BitSet next = (BitSet) placed.clone();
+            next.set(cell);
+            if(visited.contains(next)) continue;
+            int restricted = compiled.place(bdd, cell / size, cell % size);
+            explore(compiled, next, restricted, visited, states);
+            compiled.free(restricted);
+        }
+    }
+
+    /**
+     * Writes the states as the table of the variant, replacing any earlier one
+     */
+    static void save(File file, BoardVariant variant, List<long[]> states) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        Files.createDirectories(directory.toPath());
+        File tmp = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            try(OutputStream out = new FileOutputStream(tmp)) {
+                write(out, variant, states);
+            }
+            // readers never see a half written table
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // only left if the table was not moved in place
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    private static void write(OutputStream stream, BoardVariant variant, List<long[]> states) throws IOException {
+        int size = variant.getSize();
+        int words = words(size);
+        // at most three quarters of the slots are used
+        int slots = Integer.highestOneBit(Math.max(1, states.size() * 4 / 3)) << 1;
+        int[] index = new int[slots];
+        for(int entry = 0; entry < states.size(); entry++) {
+            long[] key = new long[words];
+            System.arraycopy(states.get(entry), 0, key, 0, words);
+            int slot = hash(key) & (slots - 1);
+            while(index[slot] != 0) slot = (slot + 1) & (slots - 1);
+            index[slot] = entry + 1;
+        }
+
+        CRC32 crc = new CRC32();
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new CheckedOutputStream(stream, crc), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(variant.getKey());
+        out.writeInt(size);
+        out.writeInt(words);
+        out.writeInt(states.size());
+        out.writeInt(slots);
+        for(long[] state : states) {
+            for(long word : state) out.writeLong(word);
+        }
+        for(int slot : index) out.writeInt(slot);
+        out.flush();
+
+        // the checksum itself is not part of the checksum
+        new DataOutputStream(stream).writeLong(crc.getValue());
+    }
+
+    /**
+     * Returns the table in the file if it is one of the variant, and null otherwise
+     */
+    static ResponseTable load(File file, BoardVariant variant) {
+        if(!file.isFile()) return null;
+
+        try(RandomAccessFile in = new RandomAccessFile(file, "r");
+            FileChannel channel = in.getChannel()) {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ResponseTable table = read(buffer, variant);
+            if(table == null) System.err.println("Ignoring stale or corrupt response table " + file);
+            return table;
+        } catch(IOException | BufferUnderflowException | IllegalArgumentException e) {
+            System.err.println("Ignoring unreadable response table " + file + ": " + e);
+            return null;
+        }
+    }
+
+    private static ResponseTable read(MappedByteBuffer buffer, BoardVariant variant) {
+        if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+
+        byte[] storedKey = new byte[buffer.getShort() & 0xffff];
+        buffer.get(storedKey);
+        String key = new String(storedKey, StandardCharsets.UTF_8);
+        if(!key.equals(variant.getKey())) return null;
+
+        int size = buffer.getInt();
+        int words = buffer.getInt();
+        int entries = buffer.getInt();
+        int slots = buffer.getInt();
+        if(size != variant.getSize() || words != words(size) || entries < 0 || Integer.bitCount(slots) != 1
+                || slots <= entries) {
+            return null;
+        }
+        long setBytes = (long) entries * SETS * words * 8;
+        if(buffer.remaining() != setBytes + (long) slots * 4 + 8) return null;
+
+        int start = buffer.position();
+        int end = start + (int) setBytes + slots * 4;
+        long storedCRC = buffer.getLong(end);
+        CRC32 crc = new CRC32();
+        buffer.rewind().limit(end);
+        crc.update(buffer);
+        if(crc.getValue() != storedCRC) return null;
+
+        LongBuffer sets = slice(buffer, start, (int) setBytes).asLongBuffer();
+        IntBuffer index = slice(buffer, start + (int) setBytes, slots * 4).asIntBuffer();
+        return new ResponseTable(key, size, words, entries, sets, index);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length).position(offset);
+        return slice.slice();
+    }
+
+    /**
+     * Returns the placed queens as longs, with the cell size*size set
+     */
+    private static long[] key(BitSet placed, int size, int words) {
+        BitSet key = (BitSet) placed.clone();
+        key.set(size * size);
+        return longs(key, words);
+    }
+
+    private static long[] longs(BitSet cells, int words) {
+        long[] longs = new long[words];
+        long[] set = cells.toLongArray();
+        System.arraycopy(set, 0, longs, 0, set.length);
+        return longs;
+    }
+
+    /**
+     * Returns the number of longs holding the cells of a board and one more bit
+     */
+    private static int words(int size) {
+        return (size * size + 1 + 63) / 64;
+    }
+
+    private static int hash(long[] key) {
+        long h = 0;
+        for(long word : key) h = (h + word) * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return key + ", " + entries + " boards";
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * One user's board in play on top of a shared CompiledBoard. A session only
+ * owns the queens placed so far, its own restricted BDD and the board shown
+ * to the user, so many sessions of the same size cost little more than one.
+ *
+ * All methods are synchronized, so a session can be used from several
+ * request threads. Once closed, a session throws a SessionClosedException
+ * instead of touching the released BDD.
+ *
+ * @author Sabina Hult
+ */
+public class Session implements IQueensLogic {
+    // no BDD held
+    private static final int NONE = -1;
+
+    private final String id;
+    private final CompiledBoard compiled;
+
+    private final List<int[]> placed = new ArrayList<>();
+    private int bdd = NONE;
+    private int[][] board;
+    private long lastAccess;
+    private boolean closed;
+
+    public Session(String id, CompiledBoard compiled) {
+        this.id = id;
+        this.compiled = compiled;
+        initializeBoard(compiled.getSize());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Starts over with an empty board. The size has to be the size of the
+     * compiled board the session was created for
+     */
+    @Override
+    public synchronized void initializeBoard(int size) {
+        checkOpen();
+        if(size != compiled.getSize()) {
+            throw new IllegalArgumentException("Session " + id + " is for " + compiled.getSize()
+                    + "x" + compiled.getSize() + " boards");
+        }
+        if(bdd != NONE) compiled.free(bdd);
+
+        placed.clear();
+        board = new int[size][size];
+        bdd = compiled.copyRules();
+        compiled.updateBoard(placedCells(), bdd, board);
+        touch();
+    }
+
+    @Override
+    public synchronized int[][] getBoard() {
+        checkOpen();
+        touch();
+        return board;
+    }
+
+    @Override
+    public synchronized void insertQueen(int column, int row) {
+        checkOpen();
+        touch();
+        // only insert if the position is empty
+        if(board[column][row] != 0) return;
+
+        board[column][row] = 1;
+        placed.add(new int[] {column, row});
+
+        int restricted = compiled.place(bdd, column, row);
+        compiled.free(bdd);
+        bdd = restricted;
+        compiled.updateBoard(placedCells(), bdd, board);
+    }
+
+    /**
+     * Returns the positions [column, row] of the queens placed by the user,
+     * in the order they were placed
+     */
+    public synchronized List<int[]> getPlacedQueens() {
+        return new ArrayList<>(placed);
+    }
+
+    /**
+     * Returns a copy of the board, safe to read while the session changes
+     */
+    public synchronized int[][] copyBoard() {
+        checkOpen();
+        int[][] copy = new int[board.length][];
+        for(int c = 0; c < board.length; c++) copy[c] = board[c].clone();
+        return copy;
+    }
+
+    public synchronized long getLastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Releases the BDD of the session. Using the session afterwards throws
+     * a SessionClosedException
+     */
+    public synchronized void close() {
+        if(bdd != NONE) compiled.free(bdd);
+        bdd = NONE;
+        closed = true;
+    }
+
+    private void checkOpen() {
+        if(closed) throw new SessionClosedException(id);
+    }
+
+    /**
+     * Returns the placed queens as a set of cells column*size+row
+     */
+    private BitSet placedCells() {
+        BitSet cells = new BitSet();
+        for(int[] queen : placed) cells.set(BoardState.cell(queen[0], queen[1], compiled.getSize()));
+        return cells;
+    }
+
+    private void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+}
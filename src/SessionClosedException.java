@@ -0,0 +1,13 @@
+/**
+ * Thrown by a Session used after it was closed, e.g. by a request that
+ * looked the session up before another request or the idle reaper closed it.
+ *
+ * @author Sabina Hult
+ */
+public class SessionClosedException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+
+    public SessionClosedException(String id) {
+        super("Session " + id + " is closed");
+    }
+}
@@ -0,0 +1,99 @@
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the sessions of many concurrent users. The rules for each board size
+ * are compiled once, by the first session asking for that size, and shared
+ * by every later session of the same size.
+ *
+ * @author Sabina Hult
+ */
+public class SessionManager {
+    private final ConcurrentMap<Integer, Future<CompiledBoard>> boards = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    /**
+     * Returns a new session with an empty size x size board
+     */
+    public Session createSession(int size) {
+        String id = Long.toString(nextId.getAndIncrement());
+        Session session = new Session(id, getCompiledBoard(size));
+        sessions.put(id, session);
+        return session;
+    }
+
+    /**
+     * Returns the session with the given id, or null if there is none
+     */
+    public Session getSession(String id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * Removes the session and releases its BDD. Returns false if there was
+     * no session with the given id
+     */
+    public boolean closeSession(String id) {
+        Session session = sessions.remove(id);
+        if(session == null) return false;
+        session.close();
+        return true;
+    }
+
+    /**
+     * Closes every session that has not been used for the given time
+     */
+    public void closeIdleSessions(long idleMillis) {
+        long now = System.currentTimeMillis();
+        for(Session session : sessions.values()) {
+            if(now - session.getLastAccess() > idleMillis) closeSession(session.getId());
+        }
+    }
+
+    /**
+     * Closes every session and forgets the compiled boards, so their
+     * engines can be collected
+     */
+    public void closeAllSessions() {
+        for(Session session : sessions.values()) closeSession(session.getId());
+        boards.clear();
+    }
+
+    public Collection<Session> getSessions() {
+        return sessions.values();
+    }
+
+    /**
+     * Returns the compiled rules for the size, compiling them if no session
+     * has asked for the size before. Concurrent callers wait for the same
+     * compilation instead of starting their own
+     */
+    public CompiledBoard getCompiledBoard(int size) {
+        Future<CompiledBoard> future = boards.get(size);
+        if(future == null) {
+            FutureTask<CompiledBoard> task = new FutureTask<>(() -> new MyLogic().compile(size));
+            future = boards.putIfAbsent(size, task);
+            if(future == null) {
+                future = task;
+                task.run();
+            }
+        }
+
+        try {
+            return future.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while compiling " + size + "x" + size, e);
+        } catch(ExecutionException e) {
+            // let a later session try again
+            boards.remove(size, future);
+            throw new IllegalStateException("Could not compile " + size + "x" + size, e.getCause());
+        }
+    }
+}
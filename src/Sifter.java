@@ -0,0 +1,122 @@
+import net.sf.javabdd.BDDFactory;
+
+/**
+ * Dynamic reordering by sifting while the rules are being conjoined.
+ *
+ * The sifting built into JavaBDD 1.0b2 (REORDER_SIFT and REORDER_SIFTITE)
+ * fails with a NullPointerException, so this class sifts on its own through
+ * setVarOrder. To keep the number of reorderings down it moves blocks of
+ * width adjacent levels instead of single variables: each block is tried at
+ * every position in the order and left where the BDD was smallest.
+ *
+ * A sift is triggered whenever the BDD being built has doubled in size since
+ * the last one, in the same way as automatic reordering in BuDDy.
+ *
+ * @author Sabina Hult
+ */
+public class Sifter {
+    // do not bother reordering BDDs smaller than this
+    private static final int MIN_NODES = 1000;
+
+    private final JavaBDDEngine engine;
+    private final BDDFactory fact;
+    private final int width;
+
+    private int threshold = MIN_NODES;
+    private int sifts;
+
+    public Sifter(JavaBDDEngine engine, int width) {
+        this.engine = engine;
+        this.fact = engine.getFactory();
+        this.width = width;
+    }
+
+    /**
+     * Sifts if the bdd has doubled in size since the last sift
+     */
+    public void check(int bdd) {
+        int nodes = engine.nodeCount(bdd);
+        if(nodes < threshold) return;
+
+        nodes = sift(bdd);
+        threshold = Math.max(MIN_NODES, 2 * nodes);
+    }
+
+    /**
+     * Moves every block of levels to the position where the bdd is smallest
+     * and returns the resulting node count
+     */
+    public int sift(int bdd) {
+        sifts++;
+        int blockNum = fact.varNum() / width;
+
+        // blocks[i] holds the variables of the block at position i, top to bottom
+        int[][] blocks = new int[blockNum][width];
+        for(int level = 0; level < blockNum * width; level++) {
+            blocks[level / width][level % width] = fact.level2Var(level);
+        }
+
+        int best = engine.nodeCount(bdd);
+        // sift each block, keeping track of the blocks by their variables
+        int[][] original = blocks.clone();
+        for(int[] block : original) {
+            int position = indexOf(blocks, block);
+            int bestPosition = position;
+
+            for(int p = 0; p < blockNum; p++) {
+                if(p == position) continue;
+                setOrder(move(blocks, position, p));
+                int nodes = engine.nodeCount(bdd);
+                if(nodes < best) {
+                    best = nodes;
+                    bestPosition = p;
+                }
+            }
+
+            blocks = move(blocks, position, bestPosition);
+            setOrder(blocks);
+        }
+        return best;
+    }
+
+    public int getSifts() {
+        return sifts;
+    }
+
+    /**
+     * Returns a copy of the blocks with the block at from moved to position to
+     */
+    private static int[][] move(int[][] blocks, int from, int to) {
+        int[][] moved = new int[blocks.length][];
+        int[] block = blocks[from];
+        int j = 0;
+        for(int i = 0; i < blocks.length; i++) {
+            if(i == from) continue;
+            if(j == to) moved[j++] = block;
+            moved[j++] = blocks[i];
+        }
+        if(j == to) moved[j] = block;
+        return moved;
+    }
+
+    private static int indexOf(int[][] blocks, int[] block) {
+        for(int i = 0; i < blocks.length; i++) {
+            if(blocks[i] == block) return i;
+        }
+        throw new IllegalStateException("Block not found");
+    }
+
+    /**
+     * Reorders the variables of the factory to follow the blocks.
+     * Variables outside the blocks keep their place at the bottom
+     */
+    private void setOrder(int[][] blocks) {
+        int[] order = new int[fact.varNum()];
+        int level = 0;
+        for(int[] block : blocks) {
+            for(int var : block) order[level++] = var;
+        }
+        for(; level < order.length; level++) order[level] = fact.level2Var(level);
+        fact.setVarOrder(order);
+    }
+}
@@ -0,0 +1,192 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Counts the satisfying assignments of a BDD exactly, in total and for each
+ * variable being true, and draws assignments uniformly at random.
+ *
+ * The BDD is taken as a NodeGraph, so the counter is independent of the
+ * factory. Assignments assign every variable, including the ones a path
+ * skips. They are returned as the set of items whose variable is true, where
+ * the item of a variable is given by the caller.
+ *
+ * @author Sabina Hult
+ */
+public class SolutionCounter {
+    final int levels;
+    // per node: level of the variable (levels for the terminals), children
+    final int[] level;
+    final int[] low;
+    final int[] high;
+    final int root;
+    // item reported for the variable at each level
+    final int[] itemAt;
+
+    // number of assignments from each node to True, over the levels from the node down
+    private BigInteger[] counts;
+
+    /**
+     * @param graph the BDD to count
+     * @param level2Var the variable at each level of the factory the BDD came from
+     * @param itemOf the item reported for each variable, or null for the variable itself
+     */
+    public SolutionCounter(NodeGraph graph, int[] level2Var, int[] itemOf) {
+        levels = level2Var.length;
+        int[] var2Level = new int[levels];
+        for(int l = 0; l < levels; l++) var2Level[level2Var[l]] = l;
+
+        int size = graph.size();
+        level = new int[size];
+        low = new int[size];
+        high = new int[size];
+        for(int i = 0; i < size; i++) {
+            level[i] = graph.isTerminal(i) ? levels : var2Level[graph.var(i)];
+            low[i] = graph.low(i);
+            high[i] = graph.high(i);
+        }
+        root = graph.root();
+
+        itemAt = new int[levels];
+        for(int l = 0; l < levels; l++) {
+            itemAt[l] = itemOf == null ? level2Var[l] : itemOf[level2Var[l]];
+        }
+    }
+
+    /**
+     * The exact number of satisfying assignments over all the variables
+     */
+    public BigInteger count() {
+        return paths(root, 0);
+    }
+
+    /**
+     * Returns, indexed by item, the number of satisfying assignments where
+     * the variable of the item is true. One pass from the root down weighs
+     * every edge by the assignments above and below it
+     */
+    public BigInteger[] countTrue() {
+        int size = level.length;
+        // assignments of the levels above each node leading to it
+        BigInteger[] above = new BigInteger[size];
+        Arrays.fill(above, BigInteger.ZERO);
+        BigInteger[] trueAt = new BigInteger[levels];
+        Arrays.fill(trueAt, BigInteger.ZERO);
+        // difference array for the levels skipped by edges, true in half of their assignments
+        BigInteger[] skipped = new BigInteger[levels + 1];
+        Arrays.fill(skipped, BigInteger.ZERO);
+
+        if(root != NodeGraph.FALSE) {
+            above[root] = BigInteger.ONE.shiftLeft(level[root]);
+            skip(skipped, 0, level[root], count());
+        }
+
+        // parents are stored after their children
+        for(int u = size - 1; u > NodeGraph.TRUE; u--) {
+            if(above[u].signum() == 0) continue;
+            int l = level[u];
+
+            for(int side = 0; side < 2; side++) {
+                int child = side == 0 ? low[u] : high[u];
+                if(child == NodeGraph.FALSE) continue;
+                BigInteger models = above[u].multiply(paths(child, l + 1));
+                if(side == 1) trueAt[l] = trueAt[l].add(models);
+                above[child] = above[child].add(above[u].shiftLeft(level[child] - l - 1));
+                skip(skipped, l + 1, level[child], models);
+            }
+        }
+
+        BigInteger[] perItem = new BigInteger[levels];
+        BigInteger half = BigInteger.ZERO;
+        for(int l = 0; l < levels; l++) {
+            half = half.add(skipped[l]);
+            perItem[itemAt[l]] = trueAt[l].add(half);
+        }
+        return perItem;
+    }
+
+    /**
+     * Returns the items that are true in an assignment drawn uniformly at
+     * random from the satisfying ones, or null if there are none
+     */
+    public BitSet sample(Random random) {
+        BigInteger total = count();
+        if(total.signum() == 0) return null;
+
+        BigInteger rank;
+        do {
+            rank = new BigInteger(total.bitLength(), random);
+        } while(rank.compareTo(total) >= 0);
+
+        boolean[] value = new boolean[levels];
+        select(rank, new int[levels + 1], value);
+
+        BitSet items = new BitSet();
+        for(int l = 0; l < levels; l++) {
+            if(value[l]) items.set(itemAt[l]);
+        }
+        return items;
+    }
+
+    /**
+     * Fills in the assignment with the given rank, in the order of the levels
+     * with false before true, and the node entering each level. The rank must
+     * be less than count()
+     */
+    void select(BigInteger rank, int[] node, boolean[] value) {
+        BigInteger k = rank;
+        int u = root;
+        for(int l = 0; l < levels; l++) {
+            node[l] = u;
+            BigInteger below;
+            int next;
+            if(level[u] == l) {
+                below = paths(low[u], l + 1);
+                next = low[u];
+            } else {
+                // a skipped variable can take both values
+                below = paths(u, l + 1);
+                next = u;
+            }
+
+            value[l] = k.compareTo(below) >= 0;
+            if(value[l]) {
+                k = k.subtract(below);
+                if(level[u] == l) next = high[u];
+            }
+            u = next;
+        }
+        node[levels] = u;
+    }
+
+    /**
+     * Number of assignments to the levels from and below leading from
+     * node u to True
+     */
+    BigInteger paths(int u, int from) {
+        if(counts == null) countNodes();
+        return counts[u].shiftLeft(level[u] - from);
+    }
+
+    private void countNodes() {
+        counts = new BigInteger[level.length];
+        counts[NodeGraph.FALSE] = BigInteger.ZERO;
+        counts[NodeGraph.TRUE] = BigInteger.ONE;
+        // children are stored before their parents
+        for(int i = 2; i < level.length; i++) {
+            counts[i] = paths(low[i], level[i] + 1).add(paths(high[i], level[i] + 1));
+        }
+    }
+
+    /**
+     * Adds half of the models of an edge to the levels from to (excluding to)
+     * it skips, since the skipped variables are true in half of them
+     */
+    private static void skip(BigInteger[] skipped, int from, int to, BigInteger models) {
+        if(from >= to) return;
+        BigInteger half = models.shiftRight(1);
+        skipped[from] = skipped[from].add(half);
+        skipped[to] = skipped[to].subtract(half);
+    }
+}
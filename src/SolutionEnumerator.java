@@ -0,0 +1,146 @@
+import java.math.BigInteger;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks the paths of a BDD one satisfying assignment at a time, in the order
+ * of the variable levels with false before true. Unlike BDD.allsat nothing is
+ * collected up front, and variables skipped by a path are expanded into both
+ * values, so every assignment assigns every variable.
+ *
+ * The BDD is taken from a SolutionCounter, which also gives the exact count
+ * and lets skip jump over assignments without visiting them.
+ *
+ * @author Sabina Hult
+ */
+public class SolutionEnumerator implements Iterator<BitSet> {
+    private final SolutionCounter counter;
+    private final int levels;
+    private final int[] level;
+    private final int[] low;
+    private final int[] high;
+
+    // current assignment: the node entering each level and the value chosen there
+    private final int[] node;
+    private final boolean[] value;
+    private boolean pending;
+    private long rank;
+    private long remaining = Long.MAX_VALUE;
+
+    public SolutionEnumerator(SolutionCounter counter) {
+        this.counter = counter;
+        levels = counter.levels;
+        level = counter.level;
+        low = counter.low;
+        high = counter.high;
+
+        node = new int[levels + 1];
+        value = new boolean[levels];
+        pending = counter.root != NodeGraph.FALSE;
+        if(pending) descend(0, counter.root);
+    }
+
+    /**
+     * Stops the enumeration after at most max more assignments
+     */
+    public SolutionEnumerator limit(long max) {
+        remaining = max;
+        return this;
+    }
+
+    /**
+     * Moves past the next k assignments without visiting them, in time
+     * linear in the number of variables
+     */
+    public SolutionEnumerator skip(long k) {
+        if(k <= 0 || !pending) return this;
+
+        BigInteger target = BigInteger.valueOf(rank).add(BigInteger.valueOf(k));
+        if(target.compareTo(count()) >= 0) {
+            pending = false;
+        } else {
+            counter.select(target, node, value);
+            rank = target.longValue();
+        }
+        return this;
+    }
+
+    /**
+     * The number of assignments returned so far, including the skipped ones
+     */
+    public long getRank() {
+        return rank;
+    }
+
+    /**
+     * The exact number of satisfying assignments over all the variables,
+     * regardless of how far the enumeration has come
+     */
+    public BigInteger count() {
+        return counter.count();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return pending && remaining > 0;
+    }
+
+    /**
+     * Returns a new set of the items that are true in the next assignment
+     */
+    @Override
+    public BitSet next() {
+        if(!hasNext()) throw new NoSuchElementException();
+
+        BitSet items = new BitSet();
+        for(int l = 0; l < levels; l++) {
+            if(value[l]) items.set(counter.itemAt[l]);
+        }
+
+        rank++;
+        remaining--;
+        pending = advance();
+        return items;
+    }
+
+    /**
+     * Chooses the first assignment below node u, starting at level from
+     */
+    private void descend(int from, int u) {
+        for(int l = from; l < levels; l++) {
+            node[l] = u;
+            if(level[u] == l) {
+                // nodes other than False always lead to True
+                value[l] = low[u] == NodeGraph.FALSE;
+                u = value[l] ? high[u] : low[u];
+            } else {
+                // a skipped variable can take both values
+                value[l] = false;
+            }
+        }
+        node[levels] = u;
+    }
+
+    /**
+     * Moves to the next assignment, returning false if there is none
+     */
+    private boolean advance() {
+        for(int l = levels - 1; l >= 0; l--) {
+            if(value[l]) continue;
+
+            int u = node[l];
+            if(level[u] != l) {
+                value[l] = true;
+                descend(l + 1, u);
+                return true;
+            }
+            if(high[u] != NodeGraph.FALSE) {
+                value[l] = true;
+                descend(l + 1, high[u]);
+                return true;
+            }
+        }
+        return false;
+    }
+}
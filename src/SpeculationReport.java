@@ -0,0 +1,69 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Plays the same random games on a SpeculativeLogic and a MyLogic, waiting a
+ * while between the moves as a user would, and checks that after every move
+ * both show the same board. Prints how many moves were made from a state
+ * speculated on while waiting, and the time the moves took.
+ *
+ * Usage: java SpeculationReport [from] [to] [games] [think]  (board sizes,
+ * defaults 8 and 10, games per size, default 20, and milliseconds between
+ * moves, default 20)
+ *
+ * @author Sabina Hult
+ */
+public class SpeculationReport {
+
+    public static void main(String[] args) throws InterruptedException {
+        int from = args.length >= 1 ? Integer.parseInt(args[0]) : 8;
+        int to = args.length >= 2 ? Integer.parseInt(args[1]) : 10;
+        int games = args.length >= 3 ? Integer.parseInt(args[2]) : 20;
+        int think = args.length >= 4 ? Integer.parseInt(args[3]) : 20;
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%4s %8s %8s %8s %10s %14s %14s%n",
+                "n", "moves", "same", "hits", "states", "BDD us/move", "spec us/move"));
+
+        boolean allSame = true;
+        for(int n = from; n <= to; n++) {
+            MyLogic bdd = new MyLogic();
+            SpeculativeLogic speculative = new SpeculativeLogic();
+
+            Random random = new Random(n);
+            int moves = 0;
+            long bddNanos = 0, speculativeNanos = 0, hits = 0, states = 0;
+            boolean same = true;
+            for(int game = 0; game < games && same; game++) {
+                bdd.initializeBoard(n);
+                speculative.initializeBoard(n);
+                for(int step = 0; step < 2 * n && same; step++) {
+                    Thread.sleep(think);
+                    int[] move = RandomMoves.next(bdd.getBoard(), random);
+                    if(move == null) break;
+
+                    long start = System.nanoTime();
+                    RandomMoves.play(bdd, move);
+                    bddNanos += System.nanoTime() - start;
+                    start = System.nanoTime();
+                    RandomMoves.play(speculative, move);
+                    speculativeNanos += System.nanoTime() - start;
+                    moves++;
+                    same = Arrays.deepEquals(bdd.getBoard(), speculative.getBoard());
+                }
+                AsyncQueensLogic logic = speculative.getLogic();
+                hits += logic.getHits();
+                states = Math.max(states, logic.getStateCount());
+            }
+            allSame &= same;
+
+            report.append(String.format("%4d %8d %8s %7.0f%% %10d %14.1f %14.1f%n", n, moves, same,
+                    100.0 * hits / Math.max(1, moves), states,
+                    bddNanos / 1000.0 / Math.max(1, moves), speculativeNanos / 1000.0 / Math.max(1, moves)));
+        }
+
+        System.out.println();
+        System.out.print(report);
+        if(!allSame) System.exit(1);
+    }
+}
@@ -0,0 +1,59 @@
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Plays a board through an AsyncQueensLogic and waits for every move, so the
+ * board speculates on the next click while the user thinks, behind the
+ * usual interface. The rules are compiled by a MyLogic and reused as long as
+ * the size stays the same.
+ *
+ * @author Sabina Hult
+ */
+public class SpeculativeLogic implements IUndoableQueensLogic {
+    private CompiledBoard compiled;
+    private AsyncQueensLogic logic;
+
+    @Override
+    public void initializeBoard(int size) {
+        if(logic != null) logic.close();
+        if(compiled == null || compiled.getSize() != size) compiled = new MyLogic().compile(size);
+        logic = AsyncQueensLogic.fromProperty(compiled);
+    }
+
+    /**
+     * Returns the board being played
+     */
+    public AsyncQueensLogic getLogic() {
+        return logic;
+    }
+
+    @Override
+    public int[][] getBoard() {
+        return logic.getBoard();
+    }
+
+    @Override
+    public void insertQueen(int column, int row) {
+        await(logic.insertQueen(column, row));
+    }
+
+    @Override
+    public void removeQueen(int column, int row) {
+        await(logic.removeQueen(column, row));
+    }
+
+    @Override
+    public boolean undo() {
+        int[][] before = logic.getBoard();
+        return await(logic.undo()) != before;
+    }
+
+    @Override
+    public boolean redo() {
+        int[][] before = logic.getBoard();
+        return await(logic.redo()) != before;
+    }
+
+    private static int[][] await(CompletableFuture<int[][]> move) {
+        return move.join();
+    }
+}
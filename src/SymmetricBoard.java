@@ -0,0 +1,139 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A CompiledBoard whose rules only hold the solutions kept by
+ * VariantRules.symmetryRules, mainly the fundamental ones, so the BDD is
+ * smaller and quicker to build. Every solution of the board is one of the
+ * kept solutions turned or mirrored, so the board in play is the same as
+ * with the full rules:
+ *
+ *  - a cell can hold a queen if, for some symmetry, the kept solutions
+ *    with the placed queens moved by the symmetry leave the moved cell free
+ *  - a cell must hold a queen if it must for every symmetry that leaves a
+ *    kept solution
+ *
+ * Placing queens does not restrict the rules, instead every board is worked
+ * out from the placed queens with one restrict per symmetry. Counting and
+ * listing solutions needs the images of the kept solutions under every
+ * symmetry, which costs about as much as building the full rules, but only
+ * when solutions are counted.
+ *
+ * @author Sabina Hult
+ */
+public class SymmetricBoard extends CompiledBoard {
+
+    public SymmetricBoard(BDDEngine engine, int rules, int size, VariableOrdering ordering) {
+        super(engine, rules, size, ordering);
+    }
+
+    /**
+     * Returns a new reference to bdd, the placed queens are only used when
+     * the board is updated
+     */
+    @Override
+    public int place(int bdd, int column, int row) {
+        return copy(bdd);
+    }
+
+    /**
+     * Returns a new reference to the rules, the placed queens are only used
+     * when the board is updated
+     */
+    @Override
+    public int placeAll(BitSet placed) {
+        return copyRules();
+    }
+
+    @Override
+    public SolutionCounter countSolutions(BitSet placed) {
+        return counter(solutionsOf(placed));
+    }
+
+    /**
+     * Returns a snapshot of every solution, the kept solutions moved by
+     * every symmetry, to check it against the full rules
+     */
+    public NodeGraph snapshotSolutions() {
+        synchronized(engine) {
+            int solutions = solutionsOf(new BitSet());
+            NodeGraph graph = engine.snapshot(solutions);
+            engine.free(solutions);
+            return graph;
+        }
+    }
+
+    /**
+     * Returns the BDD of the solutions with a queen on every cell in placed
+     */
+    private int solutionsOf(BitSet placed) {
+        int size = getSize();
+        int solutions;
+        synchronized(engine) {
+            solutions = engine.zero();
+            for(BoardSymmetry symmetry : BoardSymmetry.values()) {
+                int queens = queens(symmetry.inverse().apply(placed, size));
+                int kept = engine.and(rules, queens);
+                engine.free(queens);
+
+                // the kept solutions with the moved queens, moved back by the symmetry
+                int[] rename = new int[size * size];
+                for(int c = 0; c < size; c++) {
+                    for(int r = 0; r < size; r++) {
+                        int cell = symmetry.map(c, r, size);
+                        rename[varID(c, r)] = varID(cell / size, cell % size);
+                    }
+                }
+                int moved = engine.snapshot(kept).toBDD(engine, rename);
+                engine.free(kept);
+                solutions = engine.orWith(solutions, moved);
+            }
+        }
+        return solutions;
+    }
+
+    @Override
+    public void updateBoard(BitSet placed, int bdd, int[][] board) {
+        int size = getSize();
+        boolean[] possible = new boolean[size * size];
+        boolean[] forced = new boolean[size * size];
+        Arrays.fill(forced, true);
+        boolean solvable = false;
+
+        QueensMetrics.count("board.propagations");
+        QueensMetrics.count("board.restricts", BoardSymmetry.values().length);
+        synchronized(engine) {
+            for(BoardSymmetry symmetry : BoardSymmetry.values()) {
+                BoardSymmetry back = symmetry.inverse();
+                int queens = queens(back.apply(placed, size));
+                int kept = engine.restrict(rules, queens);
+                engine.free(queens);
+
+                if(!engine.isZero(kept)) {
+                    solvable = true;
+                    int[] domains = engine.varDomains(kept);
+                    for(int c = 0; c < size; c++) {
+                        for(int r = 0; r < size; r++) {
+                            int cell = back.map(c, r, size);
+                            int domain = domains[varID(cell / size, cell % size)];
+                            possible[BoardState.cell(c, r, size)] |= domain != DomainPropagator.FALSE;
+                            forced[BoardState.cell(c, r, size)] &= domain == DomainPropagator.TRUE;
+                        }
+                    }
+                }
+                engine.free(kept);
+            }
+        }
+
+        for(int c = 0; c < size; c++) {
+            for(int r = 0; r < size; r++) {
+                int cell = BoardState.cell(c, r, size);
+                // like the full rules, a board with no solution left rules out every cell
+                if(!solvable) board[c][r] = DomainPropagator.FALSE;
+                else if(placed.get(cell)) board[c][r] = 1;
+                else if(forced[cell]) board[c][r] = DomainPropagator.TRUE;
+                else board[c][r] = possible[cell] ? 0 : DomainPropagator.FALSE;
+            }
+        }
+    }
+}
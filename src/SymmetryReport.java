@@ -0,0 +1,62 @@
+import java.math.BigInteger;
+
+/**
+ * Builds the n-queens BDD with every solution and reduced by symmetry, and
+ * prints the size and build time of both. Every reduced build is checked
+ * against the full one: the kept solutions moved by the eight symmetries
+ * must give exactly the full BDD, and both must give the same number of
+ * fundamental solutions. The engine is chosen with -Dqueens.factory as usual.
+ *
+ * Usage: java SymmetryReport [from] [to]  (board sizes, defaults 4 and 11)
+ *
+ * @author Sabina Hult
+ */
+public class SymmetryReport {
+
+    public static void main(String[] args) {
+        int from = args.length >= 1 ? Integer.parseInt(args[0]) : 4;
+        int to = args.length >= 2 ? Integer.parseInt(args[1]) : 11;
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%4s %10s %10s %10s %10s %8s %10s %8s %12s %8s%n", "n", "nodes", "ms",
+                "reduced", "ms", "speedup", "solutions", "kept", "fundamental", "same"));
+
+        boolean allSame = true;
+        for(int n = from; n <= to; n++) {
+            MyLogic full = logic(false);
+            CompiledBoard fullBoard = full.compile(n);
+            NodeGraph solutions = fullBoard.snapshotRules();
+            long fullMillis = full.getBuildStats().getMillis();
+
+            MyLogic reduced = logic(true);
+            SymmetricBoard reducedBoard = (SymmetricBoard) reduced.compile(n);
+            NodeGraph kept = reducedBoard.snapshotRules();
+            long reducedMillis = reduced.getBuildStats().getMillis();
+
+            BigInteger fundamental = reducedBoard.countFundamentalSolutions(BoardSymmetry.of(reduced.getVariant()));
+            boolean same = reducedBoard.snapshotSolutions().sameNodes(solutions)
+                    && fundamental.equals(fullBoard.countFundamentalSolutions(BoardSymmetry.of(full.getVariant())));
+            allSame &= same;
+
+            report.append(String.format("%4d %10d %10d %10d %10d %8.2f %10.0f %8.0f %12d %8s%n", n,
+                    solutions.size() - 2, fullMillis, kept.size() - 2, reducedMillis,
+                    (double) fullMillis / Math.max(1, reducedMillis), solutions.satCount(), kept.satCount(),
+                    fundamental, same));
+        }
+
+        System.out.println();
+        System.out.print(report);
+        if(!allSame) System.exit(1);
+    }
+
+    /**
+     * Returns a logic that builds the rules every time, so the builds are measured
+     */
+    private static MyLogic logic(boolean reduced) {
+        MyLogic logic = new MyLogic();
+        logic.setCache(null);
+        logic.setHistory(null);
+        logic.setSymmetryReduced(reduced);
+        return logic;
+    }
+}
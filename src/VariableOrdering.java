@@ -0,0 +1,79 @@
+/**
+ * Ways of numbering the cells of the board as BDD variables. The variable
+ * order decides the size of the BDD, so the numbering can have a large
+ * effect on build time and memory.
+ *
+ * @author Sabina Hult
+ */
+public enum VariableOrdering {
+
+    /**
+     * One row after the other, from left to right
+     */
+    ROW_MAJOR {
+        @Override
+        public int varID(int column, int row, int size) {
+            return row * size + column;
+        }
+    },
+
+    /**
+     * One column after the other, from top to bottom
+     */
+    COLUMN_MAJOR {
+        @Override
+        public int varID(int column, int row, int size) {
+            return column * size + row;
+        }
+    },
+
+    /**
+     * Along the anti-diagonals (column + row constant), starting in the
+     * top left corner
+     */
+    DIAGONAL {
+        @Override
+        public int varID(int column, int row, int size) {
+            int d = column + row;
+            // number of cells on the anti-diagonals before d
+            int before;
+            if(d < size) before = d * (d + 1) / 2;
+            else before = size * size - (2 * size - d) * (2 * size - d - 1) / 2;
+            // position on the diagonal counted from the top row
+            int first = Math.max(0, d - size + 1);
+            return before + row - first;
+        }
+    },
+
+    /**
+     * Row by row, but taking the rows alternately from the top and the
+     * bottom of the board: 0, n-1, 1, n-2, ...
+     */
+    INTERLEAVED {
+        @Override
+        public int varID(int column, int row, int size) {
+            int position = row < (size + 1) / 2 ? 2 * row : 2 * (size - 1 - row) + 1;
+            return position * size + column;
+        }
+    };
+
+    /**
+     * Name of the system property used to choose the ordering
+     */
+    public static final String PROPERTY = "queens.ordering";
+
+    /**
+     * Returns the BDD variable of the cell [column, row] on a size x size board
+     */
+    public abstract int varID(int column, int row, int size);
+
+    /**
+     * Returns the ordering named by the system property, or ROW_MAJOR if
+     * the property is not set
+     */
+    public static VariableOrdering fromProperty() {
+        String name = System.getProperty(PROPERTY);
+        if(name == null) return ROW_MAJOR;
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Builds every named BoardVariant and prints the number of solutions, the
+ * node count and the build time, next to the fastest build time recorded
+ * in the BuildHistory. The report ends with exit status 1 if any build was
+ * markedly slower than its fastest recorded build, so it can guard against
+ * a variant quietly getting slower to start.
+ *
+ * Usage: java VariantReport [from] [to]  (board sizes, defaults 4 and 10)
+ *
+ * @author Sabina Hult
+ */
+public class VariantReport {
+    private static final String[] VARIANTS = {"queens", "rooks", "kings", "knights", "amazons"};
+
+    public static void main(String[] args) {
+        int from = args.length >= 1 ? Integer.parseInt(args[0]) : 4;
+        int to = args.length >= 2 ? Integer.parseInt(args[1]) : 10;
+        BuildHistory history = BuildHistory.fromProperty();
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%4s %-10s %12s %10s %10s %10s%n",
+                "n", "variant", "solutions", "nodes", "ms", "fastest"));
+
+        boolean slower = false;
+        for(int n = from; n <= to; n++) {
+            for(String name : VARIANTS) {
+                BoardVariant variant = BoardVariant.named(name, n);
+                MyLogic logic = new MyLogic();
+                // measure the builds, not the cache
+                logic.setCache(null);
+                logic.setHistory(history);
+                // the key MyLogic records the build under
+                long fastest = history != null ? history.getFastest(logic.historyKey(variant)) : -1;
+                logic.initializeBoard(variant);
+
+                long millis = logic.getBuildStats().getMillis();
+                boolean regressed = BuildHistory.isSlower(millis, fastest);
+                slower |= regressed;
+                report.append(String.format("%4d %-10s %12s %10d %10d %10s%s%n", n, name, logic.getSolutionCount(),
+                        logic.getNodeCount(), millis, fastest >= 0 ? Long.toString(fastest) : "-",
+                        regressed ? "  slower" : ""));
+            }
+        }
+
+        System.out.println();
+        System.out.print(report);
+        if(slower) System.exit(1);
+    }
+}
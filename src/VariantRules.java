@@ -0,0 +1,230 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles the rules of a BoardVariant into cardinality constraints, one
+ * group of constraints per board row for the ConjunctionScheduler:
+ *
+ *  - a riding piece attacks along lines, so every line it rides along,
+ *    cut into segments by blocked cells, holds at most one piece
+ *  - a leaping piece attacks single cells, so every pair of cells a leap
+ *    apart holds at most one piece
+ *  - blocked cells hold no piece
+ *  - the board holds count pieces
+ *
+ * When the segments of one ride direction are as many as the pieces to
+ * place, every segment must hold exactly one piece, so those segments get
+ * an exactly-one constraint and the count needs no constraint of its own.
+ * For queens these are the rows and the columns.
+ *
+ * The segments are worked out once, after which the groups can be built
+ * on several threads at once if the engine allows it.
+ *
+ * @author Sabina Hult
+ */
+public class VariantRules {
+    private final BoardVariant variant;
+    private final VariableOrdering ordering;
+    private final int size;
+    private final List<Segment> segments = new ArrayList<>();
+    private final boolean countImplied;
+
+    public VariantRules(BoardVariant variant, VariableOrdering ordering) {
+        this.variant = variant;
+        this.ordering = ordering;
+        this.size = variant.getSize();
+
+        boolean implied = false;
+        for(int[] step : variant.getMoves().getRides()) {
+            List<Segment> direction = segments(step);
+            boolean exactlyOne = direction.size() == variant.getCount();
+            for(Segment segment : direction) {
+                segment.exactlyOne = exactlyOne;
+                if(exactlyOne || segment.cells.size() > 1) segments.add(segment);
+            }
+            implied |= exactlyOne;
+        }
+        countImplied = implied;
+    }
+
+    public BoardVariant getVariant() {
+        return variant;
+    }
+
+    /**
+     * Returns the constraints of every row, see rowRules
+     */
+    public int[][] rules(BDDEngine engine) {
+        int[][] rows = new int[size][];
+        for(int r = 0; r < size; r++) rows[r] = rowRules(engine, r);
+        return rows;
+    }
+
+    /**
+     * Returns the constraints grouped with row r: the segments of the lines
+     * in group r (see group), the leaps from the cells of row r, row r's
+     * blocked cells, and for row 0 the count
+     */
+    public int[] rowRules(BDDEngine engine, int r) {
+        CardinalityConstraints constraints = new CardinalityConstraints(engine);
+        List<Integer> rules = new ArrayList<>();
+
+        for(Segment segment : segments) {
+            if(segment.group != r) continue;
+            int[] vars = vars(segment.cells);
+            rules.add(segment.exactlyOne ? constraints.exactlyOne(vars) : constraints.atMostOne(vars));
+        }
+
+        for(int c = 0; c < size; c++) {
+            if(variant.isBlocked(c, r)) {
+                rules.add(engine.nithVar(varID(c, r)));
+                continue;
+            }
+            for(int[] leap : variant.getMoves().getLeaps()) {
+                int column = c + leap[0];
+                int row = r + leap[1];
+                if(onBoard(column, row) && !variant.isBlocked(column, row)) {
+                    rules.add(constraints.atMostOne(new int[] {varID(c, r), varID(column, row)}));
+                }
+            }
+        }
+
+        if(r == 0 && !countImplied) {
+            List<int[]> free = new ArrayList<>();
+            for(int c = 0; c < size; c++) {
+                for(int row = 0; row < size; row++) {
+                    if(!variant.isBlocked(c, row)) free.add(new int[] {c, row});
+                }
+            }
+            rules.add(constraints.between(vars(free), variant.getCount(), variant.getCount()));
+        }
+
+        // a scheduler needs at least one operand
+        if(rules.isEmpty()) rules.add(engine.one());
+        int[] row = new int[rules.size()];
+        for(int i = 0; i < row.length; i++) row[i] = rules.get(i);
+        return row;
+    }
+
+    /**
+     * Returns true if every solution has exactly one piece on every row and
+     * column of a board with all eight symmetries, so symmetryRules can be used
+     */
+    public boolean isSymmetryReducible() {
+        boolean rows = false, columns = false;
+        for(int[] step : variant.getMoves().getRides()) {
+            rows |= step[0] == 1 && step[1] == 0;
+            columns |= step[0] == 0 && step[1] == 1;
+        }
+        return rows && columns && variant.getCount() == size && BoardSymmetry.of(variant).size() == 8;
+    }
+
+    /**
+     * Returns the constraints keeping only the solutions whose piece in
+     * column 0 is as high up as in any of its turned and mirrored solutions.
+     * A symmetry moves the cells of an edge of the board to column 0, so for
+     * every symmetry the piece on that edge may not come before the piece in
+     * column 0. The fundamental solution of every solution is kept, so every
+     * solution is a kept one moved by a symmetry, but a few of the others
+     * are kept too
+     */
+    public int[] symmetryRules(BDDEngine engine) {
+        if(!isSymmetryReducible()) {
+            throw new IllegalArgumentException("Symmetry reduction needs one piece on every row and column, not " + variant);
+        }
+        CardinalityConstraints constraints = new CardinalityConstraints(engine);
+        List<Integer> rules = new ArrayList<>();
+
+        for(BoardSymmetry symmetry : BoardSymmetry.values()) {
+            if(symmetry == BoardSymmetry.IDENTITY) continue;
+            // the cells the symmetry moves to [0, 0], [0, 1], ...
+            int[] edge = new int[size];
+            for(int j = 0; j < size; j++) edge[j] = symmetry.inverse().map(0, j, size);
+
+            for(int i = 1; i < size; i++) {
+                List<int[]> cells = new ArrayList<>();
+                boolean self = false;
+                for(int j = 0; j < i; j++) {
+                    self |= edge[j] == BoardState.cell(0, i, size);
+                    cells.add(new int[] {edge[j] / size, edge[j] % size});
+                }
+                if(self) {
+                    // the edge is column 0 upside down, the piece must be in its upper half
+                    rules.add(engine.nithVar(varID(0, i)));
+                } else {
+                    cells.add(new int[] {0, i});
+                    rules.add(constraints.atMostOne(vars(cells)));
+                }
+            }
+        }
+
+        int[] row = new int[rules.size()];
+        for(int i = 0; i < row.length; i++) row[i] = rules.get(i);
+        return row;
+    }
+
+    /**
+     * Returns the segments of the lines along the step, cut at blocked cells
+     */
+    private List<Segment> segments(int[] step) {
+        List<Segment> direction = new ArrayList<>();
+        for(int c = 0; c < size; c++) {
+            for(int r = 0; r < size; r++) {
+                // lines start where the step back leaves the board
+                if(onBoard(c - step[0], r - step[1])) continue;
+
+                Segment segment = null;
+                for(int column = c, row = r; onBoard(column, row); column += step[0], row += step[1]) {
+                    if(variant.isBlocked(column, row)) {
+                        segment = null;
+                        continue;
+                    }
+                    if(segment == null) {
+                        segment = new Segment(group(c, r, step));
+                        direction.add(segment);
+                    }
+                    segment.cells.add(new int[] {column, row});
+                }
+            }
+        }
+        return direction;
+    }
+
+    /**
+     * Returns the group of a line starting at [column, row]. A line starting
+     * on the left edge goes with its row, one starting on the top edge with
+     * its column, and one starting on the bottom edge with its column counted
+     * from the right, so every line is grouped with its mirror image
+     */
+    private int group(int column, int row, int[] step) {
+        if(column == 0) return row;
+        return step[1] > 0 ? column : size - 1 - column;
+    }
+
+    private boolean onBoard(int column, int row) {
+        return column >= 0 && column < size && row >= 0 && row < size;
+    }
+
+    private int varID(int column, int row) {
+        return ordering.varID(column, row, size);
+    }
+
+    private int[] vars(List<int[]> cells) {
+        int[] vars = new int[cells.size()];
+        for(int i = 0; i < vars.length; i++) vars[i] = varID(cells.get(i)[0], cells.get(i)[1]);
+        return vars;
+    }
+
+    /**
+     * The cells of a line between two blocked cells or the edges of the board
+     */
+    private static class Segment {
+        final int group;
+        final List<int[]> cells = new ArrayList<>();
+        boolean exactlyOne;
+
+        Segment(int group) {
+            this.group = group;
+        }
+    }
+}